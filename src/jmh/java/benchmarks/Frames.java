@@ -0,0 +1,67 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+import edu.wpi.first.util.RuntimeLoader;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+
+/**
+ * Loads OpenCV and the bundled sample frames for benchmarks.
+ */
+public final class Frames {
+    /* Resolutions with a bundled sample frame */
+    public static final String[] RESOLUTIONS = { "160x120", "320x240", "640x480" };
+
+    private static boolean loaded;
+
+    private Frames() {
+    }
+
+    /**
+     * Load the OpenCV native library, from java.library.path or extracted from a
+     * native jar on the classpath. No camera or cscore libraries are needed.
+     */
+    public static synchronized void loadOpenCv() {
+        if (loaded) {
+            return;
+        }
+        try {
+            new RuntimeLoader<>(Core.NATIVE_LIBRARY_NAME, RuntimeLoader.getDefaultExtractionRoot(), Core.class)
+                    .loadLibrary();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("could not load " + Core.NATIVE_LIBRARY_NAME, ex);
+        }
+        loaded = true;
+    }
+
+    /**
+     * Decode the bundled BGR sample frame for a resolution such as "320x240".
+     * The frames are TestPatternSource.render(frame, 0.45), a note every
+     * detection mode finds.
+     */
+    public static Mat load(String resolution) {
+        loadOpenCv();
+        String resource = "/frames/note_" + resolution + ".png";
+        try (InputStream in = Frames.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IllegalArgumentException("no sample frame " + resource);
+            }
+            MatOfByte encoded = new MatOfByte(in.readAllBytes());
+            Mat frame = Imgcodecs.imdecode(encoded, Imgcodecs.IMREAD_COLOR);
+            encoded.release();
+            return frame;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
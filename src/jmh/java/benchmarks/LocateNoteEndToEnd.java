@@ -0,0 +1,91 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import edu.wpi.first.vision.VisionPipeline;
+
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The whole NoteDetector pipeline on one frame, without the overlay stream.
+ *
+ * <p>
+ * The application classes live in the unnamed package, which JMH cannot
+ * generate code for and named packages cannot import, so the detector is
+ * created by name once and driven through the VisionPipeline interface.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocateNoteEndToEnd {
+    @Param({ "160x120", "320x240", "640x480" })
+    public String resolution;
+
+    @Param({ "0", "10" })
+    public int trackingRefresh;
+
+    /* 0 is the single-target contour path, otherwise multi-note mode */
+    @Param({ "0", "4" })
+    public int maxNotes;
+
+    private Mat frame;
+    private VisionPipeline detector;
+
+    /**
+     * Load the frame, create the detector and check that it finds the note, so
+     * the found path is what gets timed.
+     */
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        frame = Frames.load(resolution);
+        detector = createDetector();
+        detector.getClass().getMethod("setTracking", int.class, double.class)
+                .invoke(detector, trackingRefresh, 0.5);
+        detector.getClass().getMethod("setMultiNote", int.class).invoke(detector, maxNotes);
+        detector.process(frame);
+        if (!(Boolean) detector.getClass().getMethod("hasNote").invoke(detector)) {
+            throw new IllegalStateException("no note found in the " + resolution + " sample frame");
+        }
+    }
+
+    /**
+     * Create a NoteDetector with the default camera geometry and no overlay.
+     */
+    static VisionPipeline createDetector() throws ReflectiveOperationException {
+        Class<?> type = Class.forName("NoteDetector");
+        Class<?> overlay = Class.forName("OverlayStage");
+        return (VisionPipeline) type
+                .getConstructor(overlay, double.class, double.class, double.class)
+                .newInstance(null, 0.9564404, 0.1778, 0.257556);
+    }
+
+    @TearDown
+    public void tearDown() {
+        frame.release();
+    }
+
+    @Benchmark
+    public VisionPipeline locateNote() {
+        detector.process(frame);
+        return detector;
+    }
+}
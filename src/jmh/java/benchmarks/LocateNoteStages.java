@@ -0,0 +1,243 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Each stage of NoteDetector.locateNote on its own, using the same OpenCV
+ * calls and parameters. Every stage reads the previous stage's output, which
+ * is computed once in setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocateNoteStages {
+    private static final Scalar LOWER_ORANGE = new Scalar(0, 100, 100);
+    private static final Scalar UPPER_ORANGE = new Scalar(20, 255, 255);
+    private static final Scalar RED = new Scalar(0, 0, 255);
+    private static final Scalar GREEN = new Scalar(0, 255, 0);
+    private static final Scalar BLUE = new Scalar(255, 0, 0);
+
+    private static final double FOV = 0.9564404;
+    private static final double RING_RADIUS = 0.1778;
+    private static final double CAM_ELEVATION = 0.257556;
+
+    static {
+        // The Mat fields below are created before setup runs
+        Frames.loadOpenCv();
+    }
+
+    @Param({ "160x120", "320x240", "640x480" })
+    public String resolution;
+
+    private Mat frame;
+    private final Mat hsv = new Mat();
+    private final Mat mask = new Mat();
+    private final Mat morphed = new Mat();
+    private final Mat scratch = new Mat();
+    private final Mat hierarchy = new Mat();
+    private final Mat overlay = new Mat();
+    private final Mat labels = new Mat();
+    private final Mat stats = new Mat();
+    private final Mat centroids = new Mat();
+    private int[] componentStats = new int[0];
+    private Mat kernel;
+    private final MatOfPoint2f contour2f = new MatOfPoint2f();
+    private final MatOfPoint2f approxCurve = new MatOfPoint2f();
+    private final float[] quad = new float[8];
+    private final List<MatOfPoint> contours = new ArrayList<>();
+    private final List<MatOfPoint> found = new ArrayList<>();
+    private final Point lineStart = new Point();
+    private final Point lineEnd = new Point();
+
+    private int width;
+    private int height;
+    private double refinedLeftmostX;
+    private double refinedRightmostX;
+
+    /**
+     * Load the frame and run the chain once so every stage has its input.
+     */
+    @Setup
+    public void setup() {
+        frame = Frames.load(resolution);
+        width = frame.cols();
+        height = frame.rows();
+        kernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(5, 5));
+
+        colorConversion();
+        threshold();
+        Imgproc.erode(mask, morphed, kernel);
+        Imgproc.dilate(morphed, morphed, kernel);
+        Imgproc.findContours(morphed, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+
+        refinedLeftmostX = Double.MAX_VALUE;
+        refinedRightmostX = Double.MIN_VALUE;
+        for (MatOfPoint contour : contours) {
+            if (Imgproc.contourArea(contour) > 100 && approximate(contour)) {
+                approxCurve.get(0, 0, quad);
+                for (int v = 0; v < 4; v++) {
+                    refinedLeftmostX = Math.min(refinedLeftmostX, quad[v * 2]);
+                    refinedRightmostX = Math.max(refinedRightmostX, quad[v * 2]);
+                }
+            }
+        }
+        if (refinedLeftmostX > refinedRightmostX) {
+            throw new IllegalStateException("no note found in the " + resolution + " sample frame");
+        }
+    }
+
+    /**
+     * Release native buffers.
+     */
+    @TearDown
+    public void tearDown() {
+        for (MatOfPoint contour : contours) {
+            contour.release();
+        }
+        frame.release();
+        hsv.release();
+        mask.release();
+        morphed.release();
+        scratch.release();
+        hierarchy.release();
+        overlay.release();
+        labels.release();
+        stats.release();
+        centroids.release();
+        kernel.release();
+        contour2f.release();
+        approxCurve.release();
+    }
+
+    @Benchmark
+    public Mat colorConversion() {
+        Imgproc.cvtColor(frame, hsv, Imgproc.COLOR_BGR2HSV);
+        return hsv;
+    }
+
+    @Benchmark
+    public Mat threshold() {
+        Core.inRange(hsv, LOWER_ORANGE, UPPER_ORANGE, mask);
+        return mask;
+    }
+
+    @Benchmark
+    public Mat erodeDilate() {
+        Imgproc.erode(mask, scratch, kernel);
+        Imgproc.dilate(scratch, scratch, kernel);
+        return scratch;
+    }
+
+    @Benchmark
+    public int findContours() {
+        Imgproc.findContours(morphed, found, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+        int count = found.size();
+        for (int i = 0; i < count; i++) {
+            found.get(i).release();
+        }
+        found.clear();
+        return count;
+    }
+
+    @Benchmark
+    public int approxPolyDp() {
+        int quads = 0;
+        for (int i = 0; i < contours.size(); i++) {
+            MatOfPoint contour = contours.get(i);
+            if (Imgproc.contourArea(contour) > 100 && approximate(contour)) {
+                quads++;
+            }
+        }
+        return quads;
+    }
+
+    /**
+     * The multi-note replacement for findContours plus approxPolyDp.
+     */
+    @Benchmark
+    public int connectedComponents() {
+        int count = Imgproc.connectedComponentsWithStats(morphed, labels, stats, centroids, 8, CvType.CV_32S);
+        if (componentStats.length < count * Imgproc.CC_STAT_MAX) {
+            componentStats = new int[count * Imgproc.CC_STAT_MAX];
+        }
+        stats.get(0, 0, componentStats);
+        int candidates = 0;
+        for (int label = 1; label < count; label++) {
+            if (componentStats[label * Imgproc.CC_STAT_MAX + Imgproc.CC_STAT_AREA] > 100) {
+                candidates++;
+            }
+        }
+        return candidates;
+    }
+
+    @Benchmark
+    public Mat overlayDrawing() {
+        Imgproc.cvtColor(morphed, overlay, Imgproc.COLOR_GRAY2BGR);
+        int leftX = (int) refinedLeftmostX;
+        int rightX = (int) refinedRightmostX;
+        int centerOffset = (leftX - rightX) / 2;
+        line(leftX, 0, leftX, height, RED);
+        line(rightX, 0, rightX, height, RED);
+        line(0, height / 2, width, height / 2, BLUE);
+        line(width / 2, 0, width / 2, height, BLUE);
+        line(width / 2 - centerOffset, 0, width / 2 - centerOffset, height, GREEN);
+        line(width / 2 + centerOffset, 0, width / 2 + centerOffset, height, GREEN);
+        return overlay;
+    }
+
+    @Benchmark
+    public double geometry() {
+        final double internalAngleOffset = (((refinedLeftmostX + refinedRightmostX) / 2) - refinedLeftmostX)
+                * FOV / width;
+        final double hypDistance = RING_RADIUS / Math.tan(internalAngleOffset);
+        final double nD = Math.sqrt(Math.pow(hypDistance, 2) - Math.pow(CAM_ELEVATION, 2));
+        final double nTheta = (FOV / width) * ((refinedLeftmostX + refinedRightmostX - width) / 2);
+        return nD + nTheta;
+    }
+
+    private boolean approximate(MatOfPoint contour) {
+        contour.convertTo(contour2f, CvType.CV_32F);
+        double epsilon = 0.02 * Imgproc.arcLength(contour2f, true);
+        Imgproc.approxPolyDP(contour2f, approxCurve, epsilon, true);
+        return approxCurve.rows() == 4;
+    }
+
+    private void line(double x1, double y1, double x2, double y2, Scalar color) {
+        lineStart.x = x1;
+        lineStart.y = y1;
+        lineEnd.x = x2;
+        lineEnd.y = y2;
+        Imgproc.line(overlay, lineStart, lineEnd, color, 1);
+    }
+}
@@ -0,0 +1,79 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import edu.wpi.first.vision.VisionPipeline;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The whole NoteDetector pipeline with segmentation split across 1 to 4
+ * stripe threads. One thread is the ordinary single-threaded path.
+ *
+ * <p>
+ * OpenCV's own worker threads are turned off, as they are on the Pi with
+ * several cameras, so the scaling shown is the stripes' alone. This only
+ * times the paths; StripeCheck in src/tools checks that they give identical
+ * results.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StripedSegmentation {
+    @Param({ "320x240", "640x480" })
+    public String resolution;
+
+    @Param({ "1", "2", "3", "4" })
+    public int threads;
+
+    private Mat frame;
+    private VisionPipeline detector;
+
+    /**
+     * Load the frame and create the detector with its stripe pool.
+     */
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        frame = Frames.load(resolution);
+        Core.setNumThreads(1);
+        detector = LocateNoteEndToEnd.createDetector();
+        detector.getClass().getMethod("setSegmentationThreads", int.class, String.class)
+                .invoke(detector, threads, "Segment");
+    }
+
+    /**
+     * Stop the stripe pool and free the frame.
+     */
+    @TearDown
+    public void tearDown() throws ReflectiveOperationException {
+        detector.getClass().getMethod("setSegmentationThreads", int.class, String.class)
+                .invoke(detector, 1, "Segment");
+        frame.release();
+    }
+
+    @Benchmark
+    public VisionPipeline locateNote() {
+        detector.process(frame);
+        return detector;
+    }
+}
@@ -0,0 +1,98 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import org.opencv.calib3d.Calib3d;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.TermCriteria;
+
+/**
+ * Horizontal angle from the optical axis of every pixel of a calibrated
+ * camera, with lens distortion removed.
+ *
+ * <p>
+ * Built once per calibration by undistorting every pixel position, so the
+ * detector only looks up the few points it extracts from each frame and never
+ * remaps images. Frames processed at another size than the calibration, such
+ * as downscaled ones, are looked up in proportion, interpolating between
+ * pixels.
+ */
+public final class AngleTable {
+    /* Undistortion iterations; more than OpenCV's default of 5 for wide lenses */
+    private static final TermCriteria CRITERIA = new TermCriteria(TermCriteria.COUNT + TermCriteria.EPS, 20, 1e-6);
+
+    private final int width;
+    private final int height;
+
+    /* Radians, positive to the right, row major at the calibration size */
+    private final float[] angles;
+
+    /**
+     * Build the table. Takes a few tens of milliseconds at 640x480, so build it
+     * off the detection thread.
+     */
+    public AngleTable(CameraCalibration calibration) {
+        width = calibration.width;
+        height = calibration.height;
+        int count = width * height;
+
+        float[] points = new float[count * 2];
+        for (int y = 0, i = 0; y < height; y++) {
+            for (int x = 0; x < width; x++, i += 2) {
+                points[i] = x;
+                points[i + 1] = y;
+            }
+        }
+
+        double[] distortion = calibration.getDistortion();
+        Mat src = new Mat(count, 1, CvType.CV_32FC2);
+        Mat dst = new Mat();
+        Mat cameraMatrix = new Mat(3, 3, CvType.CV_64F);
+        Mat distCoeffs = new Mat(1, distortion.length, CvType.CV_64F);
+        Mat none = new Mat();
+        try {
+            src.put(0, 0, points);
+            cameraMatrix.put(0, 0, calibration.getCameraMatrix());
+            distCoeffs.put(0, 0, distortion);
+            // With no rectification or new camera matrix the result is in
+            // normalized coordinates, x / z on the undistorted image plane
+            Calib3d.undistortPointsIter(src, dst, cameraMatrix, distCoeffs, none, none, CRITERIA);
+            dst.get(0, 0, points);
+        } finally {
+            src.release();
+            dst.release();
+            cameraMatrix.release();
+            distCoeffs.release();
+            none.release();
+        }
+
+        angles = new float[count];
+        for (int i = 0; i < count; i++) {
+            angles[i] = (float) Math.atan(points[i * 2]);
+        }
+    }
+
+    /**
+     * Horizontal angle of a point, positive to the right of the optical axis.
+     *
+     * @param x           column in the processed frame
+     * @param y           row in the processed frame
+     * @param frameWidth  processed frame width in pixels
+     * @param frameHeight processed frame height in pixels
+     */
+    public double angle(double x, double y, int frameWidth, int frameHeight) {
+        double u = Math.max(0, Math.min(width - 1, x * width / frameWidth));
+        double v = Math.max(0, Math.min(height - 1, y * height / frameHeight));
+        int u0 = (int) u;
+        int v0 = (int) v;
+        int u1 = Math.min(u0 + 1, width - 1);
+        int v1 = Math.min(v0 + 1, height - 1);
+        double fu = u - u0;
+        double fv = v - v0;
+
+        double top = angles[v0 * width + u0] * (1 - fu) + angles[v0 * width + u1] * fu;
+        double bottom = angles[v1 * width + u0] * (1 - fu) + angles[v1 * width + u1] * fu;
+        return top * (1 - fv) + bottom * fv;
+    }
+}
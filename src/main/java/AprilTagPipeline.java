@@ -0,0 +1,183 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import edu.wpi.first.apriltag.AprilTagDetection;
+import edu.wpi.first.apriltag.AprilTagDetector;
+import edu.wpi.first.apriltag.AprilTagPoseEstimate;
+import edu.wpi.first.apriltag.AprilTagPoseEstimator;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.vision.VisionPipeline;
+
+import org.opencv.calib3d.Calib3d;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * AprilTag pipeline. Finds tags in a grayscale frame and estimates each one's
+ * pose relative to the camera.
+ *
+ * <p>
+ * Results are packed per tag as { id, x, y, z, roll, pitch, yaw, ambiguity },
+ * in meters and radians in the estimator's camera frame: x right, y down, z
+ * out of the lens. Intrinsics come from the camera's calibration, whose
+ * distortion is removed from the four corners of each tag only, or else from
+ * its field of view as an ideal pinhole.
+ */
+public class AprilTagPipeline implements VisionPipeline {
+    /* Values per tag in getTags() */
+    public static final int TAG_VALUES = 8;
+
+    /* Most tags reported per frame */
+    private static final int MAX_TAGS = 16;
+
+    /* Weakest decode kept; small families give false positives below this */
+    private static final double MIN_DECISION_MARGIN = 20;
+
+    /* Corrected bits are not trusted, since tag16h5 has so few */
+    private static final int MAX_HAMMING = 0;
+
+    private static final int POSE_ITERATIONS = 50;
+
+    private final AprilTagDetector detector = new AprilTagDetector();
+    private final double tagSize;
+    private final CameraCalibration calibration;
+    private final double fov;
+    private AprilTagPoseEstimator estimator;
+    private int frameWidth;
+    private int frameHeight;
+
+    /* Calibration scaled to the frame size, and corner buffers, when calibrated */
+    private final Mat cameraMatrix = new Mat(3, 3, CvType.CV_64F);
+    private final Mat distCoeffs = new Mat();
+    private final Mat corners = new Mat(4, 1, CvType.CV_32FC2);
+    private final Mat undistorted = new Mat();
+    private final float[] cornerPoints = new float[8];
+    private final double[] cornerValues = new double[8];
+
+    private final double[] tags = new double[MAX_TAGS * TAG_VALUES];
+    private int tagCount;
+
+    /* Exact-length copies of tags for publishing, indexed by count */
+    private final double[][] packedTags = new double[MAX_TAGS + 1][];
+
+    /**
+     * Create a detector for one tag family.
+     *
+     * @param family      tag family, such as "tag16h5"
+     * @param tagSize     tag edge length in meters, black border included
+     * @param decimate    quad detection decimation; 1 uses the full frame
+     * @param threads     detector worker threads
+     * @param calibration lens calibration, or null to use fov
+     * @param fov         horizontal field of view in radians
+     */
+    public AprilTagPipeline(String family, double tagSize, float decimate, int threads,
+            CameraCalibration calibration, double fov) {
+        this.tagSize = tagSize;
+        this.calibration = calibration;
+        this.fov = fov;
+        detector.addFamily(family);
+        AprilTagDetector.Config config = detector.getConfig();
+        config.quadDecimate = decimate;
+        config.numThreads = threads;
+        detector.setConfig(config);
+        if (calibration != null) {
+            double[] distortion = calibration.getDistortion();
+            distCoeffs.create(1, distortion.length, CvType.CV_64F);
+            distCoeffs.put(0, 0, distortion);
+        }
+        for (int i = 0; i <= MAX_TAGS; i++) {
+            packedTags[i] = new double[i * TAG_VALUES];
+        }
+    }
+
+    @Override
+    public void process(Mat gray) {
+        if (gray.cols() != frameWidth || gray.rows() != frameHeight) {
+            setFrameSize(gray.cols(), gray.rows());
+        }
+
+        tagCount = 0;
+        for (AprilTagDetection detection : detector.detect(gray)) {
+            if (tagCount == MAX_TAGS) {
+                break;
+            }
+            if (detection.getHamming() > MAX_HAMMING || detection.getDecisionMargin() < MIN_DECISION_MARGIN) {
+                continue;
+            }
+            AprilTagPoseEstimate estimate = calibration != null
+                    ? estimator.estimateOrthogonalIteration(detection.getHomography(), undistortCorners(detection),
+                            POSE_ITERATIONS)
+                    : estimator.estimateOrthogonalIteration(detection, POSE_ITERATIONS);
+            Transform3d pose = estimate.pose1;
+            Rotation3d rotation = pose.getRotation();
+            int t = tagCount * TAG_VALUES;
+            tags[t] = detection.getId();
+            tags[t + 1] = pose.getX();
+            tags[t + 2] = pose.getY();
+            tags[t + 3] = pose.getZ();
+            tags[t + 4] = rotation.getX();
+            tags[t + 5] = rotation.getY();
+            tags[t + 6] = rotation.getZ();
+            tags[t + 7] = estimate.getAmbiguity();
+            tagCount++;
+        }
+    }
+
+    /**
+     * Tags in the last frame, packed as TAG_VALUES per tag. The array is reused
+     * for each count.
+     */
+    public double[] getTags() {
+        double[] packed = packedTags[tagCount];
+        System.arraycopy(tags, 0, packed, 0, packed.length);
+        return packed;
+    }
+
+    public int getTagCount() {
+        return tagCount;
+    }
+
+    private void setFrameSize(int width, int height) {
+        frameWidth = width;
+        frameHeight = height;
+        double fx;
+        double fy;
+        double cx;
+        double cy;
+        if (calibration != null) {
+            double[] k = calibration.getCameraMatrix();
+            double sx = (double) width / calibration.width;
+            double sy = (double) height / calibration.height;
+            fx = k[0] * sx;
+            fy = k[4] * sy;
+            cx = k[2] * sx;
+            cy = k[5] * sy;
+            cameraMatrix.put(0, 0, fx, 0, cx, 0, fy, cy, 0, 0, 1);
+        } else {
+            fx = width / 2.0 / Math.tan(fov / 2);
+            fy = fx;
+            cx = width / 2.0;
+            cy = height / 2.0;
+        }
+        estimator = new AprilTagPoseEstimator(new AprilTagPoseEstimator.Config(tagSize, fx, fy, cx, cy));
+    }
+
+    /**
+     * Remove lens distortion from a detection's corners, keeping them in pixels.
+     */
+    private double[] undistortCorners(AprilTagDetection detection) {
+        double[] raw = detection.getCorners();
+        for (int i = 0; i < 8; i++) {
+            cornerPoints[i] = (float) raw[i];
+        }
+        corners.put(0, 0, cornerPoints);
+        Calib3d.undistortImagePoints(corners, undistorted, cameraMatrix, distCoeffs);
+        undistorted.get(0, 0, cornerPoints);
+        for (int i = 0; i < 8; i++) {
+            cornerValues[i] = cornerPoints[i];
+        }
+        return cornerValues;
+    }
+}
@@ -0,0 +1,44 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.PubSubOption;
+import edu.wpi.first.util.WPIUtilJNI;
+
+/**
+ * Publishes one camera's AprilTagPipeline results to its apriltag subtable,
+ * stamped with the frame's capture time like the note topics.
+ */
+public class AprilTagPublisher implements PipelineRunner.Listener<AprilTagPipeline> {
+    /* { id, x, y, z, roll, pitch, yaw, ambiguity } per tag */
+    private final DoubleArrayPublisher tagsPub;
+
+    /* Capture-to-publish latency in milliseconds and frame sequence of each Tags */
+    private final DoublePublisher latencyPub;
+    private final IntegerPublisher sequencePub;
+
+    /**
+     * Create publishers in a table.
+     *
+     * @param frameRate camera frames per second, which sets how often
+     *                  NetworkTables sends
+     */
+    public AprilTagPublisher(NetworkTable table, double frameRate) {
+        PubSubOption[] options = NotePublisher.perFrame(frameRate);
+        tagsPub = table.getDoubleArrayTopic("Tags").publish(options);
+        latencyPub = table.getDoubleTopic("TagLatency").publish(options);
+        sequencePub = table.getIntegerTopic("TagSequence").publish(options);
+    }
+
+    @Override
+    public void copyPipelineOutputs(AprilTagPipeline pipeline, FrameGrabber.Frame frame) {
+        long latency = WPIUtilJNI.now() - frame.captureTime;
+        tagsPub.set(pipeline.getTags(), frame.captureTime);
+        latencyPub.set(latency / 1000.0, frame.captureTime);
+        sequencePub.set(frame.sequence, frame.captureTime);
+    }
+}
@@ -0,0 +1,86 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import java.util.Arrays;
+
+/**
+ * A camera's intrinsic calibration: the camera matrix and lens distortion
+ * coefficients in OpenCV's model, at the resolution they were measured at.
+ *
+ * <p>
+ * Plain data, so it can be read with the rest of the configuration before
+ * OpenCV is loaded; {@link AngleTable} turns it into per-pixel angles.
+ */
+public final class CameraCalibration {
+    /* Resolution the calibration was measured at */
+    public final int width;
+    public final int height;
+
+    /* 3x3 camera matrix, row major: fx 0 cx, 0 fy cy, 0 0 1 */
+    private final double[] cameraMatrix;
+
+    /* k1, k2, p1, p2[, k3[, k4, k5, k6]] */
+    private final double[] distortion;
+
+    /**
+     * Create a calibration.
+     *
+     * @param cameraMatrix 3x3 camera matrix, row major
+     * @param distortion   4, 5 or 8 distortion coefficients
+     */
+    public CameraCalibration(int width, int height, double[] cameraMatrix, double[] distortion) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("calibration size must be positive, got " + width + "x" + height);
+        }
+        if (cameraMatrix.length != 9) {
+            throw new IllegalArgumentException("camera matrix needs 9 values, got " + cameraMatrix.length);
+        }
+        if (cameraMatrix[0] <= 0 || cameraMatrix[4] <= 0) {
+            throw new IllegalArgumentException("camera matrix focal lengths must be positive");
+        }
+        if (distortion.length != 4 && distortion.length != 5 && distortion.length != 8) {
+            throw new IllegalArgumentException("distortion needs 4, 5 or 8 coefficients, got "
+                    + distortion.length);
+        }
+        this.width = width;
+        this.height = height;
+        this.cameraMatrix = cameraMatrix.clone();
+        this.distortion = distortion.clone();
+    }
+
+    /**
+     * The camera matrix, row major. The array is a copy.
+     */
+    public double[] getCameraMatrix() {
+        return cameraMatrix.clone();
+    }
+
+    /**
+     * The distortion coefficients. The array is a copy.
+     */
+    public double[] getDistortion() {
+        return distortion.clone();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof CameraCalibration)) {
+            return false;
+        }
+        CameraCalibration that = (CameraCalibration) other;
+        return width == that.width && height == that.height && Arrays.equals(cameraMatrix, that.cameraMatrix)
+                && Arrays.equals(distortion, that.distortion);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * (31 * width + height) + Arrays.hashCode(cameraMatrix)) + Arrays.hashCode(distortion);
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height + " fx " + cameraMatrix[0] + " fy " + cameraMatrix[4] + " cx "
+                + cameraMatrix[2] + " cy " + cameraMatrix[5] + " distortion " + Arrays.toString(distortion);
+    }
+}
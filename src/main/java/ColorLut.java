@@ -0,0 +1,131 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Classifies BGR pixels against an HSV range with a precomputed lookup table,
+ * producing the same kind of mask as cvtColor(BGR2HSV) followed by inRange
+ * in a single pass and without an intermediate HSV Mat.
+ *
+ * <p>
+ * The colour cube is quantised to a configurable number of bits per channel
+ * and stored as a packed bitset: 6 bits per channel is a 32 KiB table, 8 bits
+ * is exact and takes 2 MiB. Each cell is classified by running OpenCV's own
+ * conversion on the cell's centre colour, so at 8 bits the result matches the
+ * cvtColor + inRange path pixel for pixel. The table is rebuilt on the calling
+ * thread and swapped in atomically, so detection threads never see a
+ * half-built table.
+ *
+ * <p>
+ * This is not a faster path. OpenCV's vectorised cvtColor and inRange beat
+ * the per-pixel lookup and its copies through Java: 0.66 ms against 1.3 ms per
+ * 640x480 frame on an x86-64 desktop, and doing the lookup in OpenCV with
+ * Core.LUT and remap is slower still. "hsv" stays the default; ColorLutCheck
+ * repeats the comparison on other hardware.
+ */
+public final class ColorLut {
+    private final int bits;
+    private final int shift;
+    private volatile long[] table;
+
+    /**
+     * Create a table for an HSV range.
+     *
+     * @param bits  bits per colour channel, 1 to 8
+     * @param lower lower HSV bound, inclusive
+     * @param upper upper HSV bound, inclusive
+     */
+    public ColorLut(int bits, Scalar lower, Scalar upper) {
+        if (bits < 1 || bits > 8) {
+            throw new IllegalArgumentException("bits must be 1 to 8, got " + bits);
+        }
+        this.bits = bits;
+        shift = 8 - bits;
+        setBounds(lower, upper);
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    /**
+     * Rebuild the table for a new HSV range. Readers keep using the old table
+     * until the new one is complete.
+     */
+    public void setBounds(Scalar lower, Scalar upper) {
+        int levels = 1 << bits;
+        long[] newTable = new long[Math.max(1, (levels * levels * levels) >>> 6)];
+
+        // Classify one blue slice of the cube at a time: green rows, red columns
+        byte[] cells = new byte[levels * levels * 3];
+        byte[] classified = new byte[levels * levels];
+        Mat slice = new Mat(levels, levels, CvType.CV_8UC3);
+        Mat hsv = new Mat();
+        Mat mask = new Mat();
+        int half = (1 << shift) >> 1;
+        try {
+            for (int qb = 0; qb < levels; qb++) {
+                int i = 0;
+                for (int qg = 0; qg < levels; qg++) {
+                    for (int qr = 0; qr < levels; qr++) {
+                        cells[i++] = (byte) ((qb << shift) | half);
+                        cells[i++] = (byte) ((qg << shift) | half);
+                        cells[i++] = (byte) ((qr << shift) | half);
+                    }
+                }
+                slice.put(0, 0, cells);
+                Imgproc.cvtColor(slice, hsv, Imgproc.COLOR_BGR2HSV);
+                Core.inRange(hsv, lower, upper, mask);
+                mask.get(0, 0, classified);
+
+                int base = qb << (2 * bits);
+                for (int j = 0; j < classified.length; j++) {
+                    if (classified[j] != 0) {
+                        int index = base | j;
+                        newTable[index >>> 6] |= 1L << index;
+                    }
+                }
+            }
+        } finally {
+            slice.release();
+            hsv.release();
+            mask.release();
+        }
+
+        table = newTable;
+    }
+
+    /**
+     * Classify a BGR image into a 0/255 mask.
+     *
+     * @param bgr  8-bit, 3-channel input; may be a region view
+     * @param mask output, reallocated to the input size if needed
+     * @param ws   workspace providing the pixel buffers
+     */
+    public void apply(Mat bgr, Mat mask, DetectionWorkspace ws) {
+        int count = bgr.rows() * bgr.cols();
+        byte[] pixels = ws.pixelBuffer(count * 3);
+        byte[] out = ws.maskBuffer(count);
+        bgr.get(0, 0, pixels);
+
+        long[] t = table;
+        int gShift = bits;
+        int bShift = 2 * bits;
+        for (int i = 0, p = 0; i < count; i++, p += 3) {
+            int index = (((pixels[p] & 0xff) >> shift) << bShift)
+                    | (((pixels[p + 1] & 0xff) >> shift) << gShift)
+                    | ((pixels[p + 2] & 0xff) >> shift);
+            // Long shifts only use the low 6 bits of the index
+            out[i] = (byte) -((int) (t[index >>> 6] >>> index) & 1);
+        }
+
+        mask.create(bgr.rows(), bgr.cols(), CvType.CV_8UC1);
+        mask.put(0, 0, out, 0, count);
+    }
+}
@@ -0,0 +1,99 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calls back when a file changes, watching its directory with a WatchService.
+ *
+ * <p>
+ * Editors and the rPi web dashboard often save a file with several writes or
+ * by replacing it, so events are collected until the file has been quiet for a
+ * short settle time and then reported once.
+ */
+public final class ConfigWatcher implements AutoCloseable {
+    private static final long SETTLE_MILLIS = 250;
+
+    private final Path file;
+    private final Runnable onChange;
+    private final WatchService watcher;
+    private final Thread thread;
+
+    /**
+     * Start watching a file.
+     *
+     * @param onChange called on the watcher thread after each change
+     */
+    public ConfigWatcher(Path file, Runnable onChange) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.onChange = onChange;
+        watcher = FileSystems.getDefault().newWatchService();
+        this.file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+
+        thread = new Thread(this::run, "ConfigWatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        try {
+            for (;;) {
+                WatchKey key = watcher.take();
+                boolean changed = drain(key);
+
+                // Wait out the rest of a multi-write save
+                while (changed) {
+                    WatchKey more = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                    if (more == null) {
+                        break;
+                    }
+                    drain(more);
+                }
+
+                if (changed) {
+                    try {
+                        onChange.run();
+                    } catch (RuntimeException ex) {
+                        System.err.println("config reload failed: " + ex);
+                        ex.printStackTrace();
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            return;
+        }
+    }
+
+    /**
+     * Consume a key's events and re-arm it.
+     *
+     * @return whether any event was for the watched file
+     */
+    private boolean drain(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            Object context = event.context();
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || context instanceof Path && file.getFileName().equals(context)) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        watcher.close();
+    }
+}
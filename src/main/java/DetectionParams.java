@@ -0,0 +1,118 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import java.util.Arrays;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * An immutable set of note detection parameters, with the morphology kernel,
+ * lookup table and lens angle table already built for them.
+ *
+ * <p>
+ * New parameters are built on whichever thread changes them and handed to
+ * NoteDetector in one volatile write; the detector picks them up at the start
+ * of its next frame, so a frame never mixes old and new values. Kernels and
+ * tables that have not changed are carried over from the previous set instead
+ * of being rebuilt. Superseded kernels are left to the garbage collector, since
+ * a detector may still be using one mid-frame.
+ */
+public final class DetectionParams {
+    /* HSV range for orange note detection, inclusive */
+    public final Scalar lower;
+    public final Scalar upper;
+
+    /* Smallest blob area in pixels that can be a note */
+    public final double minArea;
+
+    /* Side of the square erode/dilate kernel in pixels */
+    public final int kernelSize;
+
+    /* Horizontal field of view in radians; unused with a calibration */
+    public final double fov;
+
+    /* Camera height above the floor in meters */
+    public final double camElevation;
+
+    /* Note radius in meters */
+    public final double ringRadius;
+
+    /* Lookup table bits per channel, or 0 for cvtColor + inRange */
+    public final int lutBits;
+
+    /* Lens calibration, or null for a pinhole with linear angles across fov */
+    public final CameraCalibration calibration;
+
+    final Mat kernel;
+    final ColorLut lut;
+    final AngleTable angles;
+
+    /**
+     * Build a parameter set.
+     *
+     * @param calibration lens calibration, or null to use fov
+     * @param previous    set to reuse the kernel and tables from when they
+     *                    match, or null
+     */
+    public DetectionParams(Scalar lower, Scalar upper, double minArea, int kernelSize, double fov,
+            double camElevation, double ringRadius, int lutBits, CameraCalibration calibration,
+            DetectionParams previous) {
+        if (kernelSize < 1) {
+            throw new IllegalArgumentException("kernel size must be at least 1, got " + kernelSize);
+        }
+        this.lower = lower;
+        this.upper = upper;
+        this.minArea = minArea;
+        this.kernelSize = kernelSize;
+        this.fov = fov;
+        this.camElevation = camElevation;
+        this.ringRadius = ringRadius;
+        this.lutBits = lutBits;
+        this.calibration = calibration;
+
+        if (previous != null && previous.kernelSize == kernelSize) {
+            kernel = previous.kernel;
+        } else {
+            kernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(kernelSize, kernelSize));
+        }
+
+        if (lutBits == 0) {
+            lut = null;
+        } else if (previous != null && previous.lutBits == lutBits && sameBounds(previous)) {
+            lut = previous.lut;
+        } else {
+            lut = new ColorLut(lutBits, lower, upper);
+        }
+
+        if (calibration == null) {
+            angles = null;
+        } else if (previous != null && calibration.equals(previous.calibration)) {
+            angles = previous.angles;
+        } else {
+            angles = new AngleTable(calibration);
+        }
+    }
+
+    /**
+     * Build the default parameters for a camera's geometry.
+     */
+    public static DetectionParams defaults(double fov, double camElevation, double ringRadius) {
+        return new DetectionParams(NoteDetector.LOWER_ORANGE, NoteDetector.UPPER_ORANGE, 100, 5, fov,
+                camElevation, ringRadius, 0, null, null);
+    }
+
+    private boolean sameBounds(DetectionParams other) {
+        return Arrays.equals(lower.val, other.lower.val) && Arrays.equals(upper.val, other.upper.val);
+    }
+
+    @Override
+    public String toString() {
+        return "HSV " + lower + " to " + upper + ", min area " + minArea + ", kernel " + kernelSize
+                + (calibration != null ? ", calibrated " + calibration.width + "x" + calibration.height : ", fov " + fov)
+                + ", elevation " + camElevation + (lutBits > 0 ? ", lut " + lutBits + " bits" : "");
+    }
+}
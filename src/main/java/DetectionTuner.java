@@ -0,0 +1,129 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import java.util.EnumSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import edu.wpi.first.networktables.DoubleArrayEntry;
+import edu.wpi.first.networktables.DoubleEntry;
+import edu.wpi.first.networktables.IntegerEntry;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEvent;
+import edu.wpi.first.networktables.NetworkTableInstance;
+
+import org.opencv.core.Scalar;
+
+/**
+ * Exposes one camera's detection parameters as NetworkTables topics in its
+ * "tuning" subtable and applies edits to them live.
+ *
+ * <p>
+ * Remote edits only mark the parameters dirty; a shared background thread
+ * then builds a new {@link DetectionParams}, including any kernel or lookup
+ * table, and hands it to the detector, which switches over at its next frame.
+ * A burst of edits is coalesced into one rebuild. Parameters applied from the
+ * config file are written back to the topics so dashboards show them.
+ */
+public final class DetectionTuner {
+    private static final ExecutorService rebuilder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "DetectionTuner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String name;
+    private final NoteDetector detector;
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    private final DoubleArrayEntry lowerEntry;
+    private final DoubleArrayEntry upperEntry;
+    private final DoubleEntry minAreaEntry;
+    private final IntegerEntry kernelEntry;
+    private final DoubleEntry fovEntry;
+    private final DoubleEntry elevationEntry;
+    private final IntegerEntry lutBitsEntry;
+
+    /**
+     * Publish a detector's current parameters and start listening for edits.
+     */
+    public DetectionTuner(String name, NetworkTable table, NoteDetector detector) {
+        this.name = name;
+        this.detector = detector;
+
+        DetectionParams params = detector.getParams();
+        lowerEntry = table.getDoubleArrayTopic("LowerHSV").getEntry(hsv(params.lower));
+        upperEntry = table.getDoubleArrayTopic("UpperHSV").getEntry(hsv(params.upper));
+        minAreaEntry = table.getDoubleTopic("MinArea").getEntry(params.minArea);
+        kernelEntry = table.getIntegerTopic("KernelSize").getEntry(params.kernelSize);
+        fovEntry = table.getDoubleTopic("Fov").getEntry(params.fov);
+        elevationEntry = table.getDoubleTopic("Elevation").getEntry(params.camElevation);
+        lutBitsEntry = table.getIntegerTopic("LutBits").getEntry(params.lutBits);
+        publish(params);
+
+        NetworkTableInstance inst = table.getInstance();
+        EnumSet<NetworkTableEvent.Kind> kinds = EnumSet.of(NetworkTableEvent.Kind.kValueRemote);
+        inst.addListener(lowerEntry, kinds, event -> markDirty());
+        inst.addListener(upperEntry, kinds, event -> markDirty());
+        inst.addListener(minAreaEntry, kinds, event -> markDirty());
+        inst.addListener(kernelEntry, kinds, event -> markDirty());
+        inst.addListener(fovEntry, kinds, event -> markDirty());
+        inst.addListener(elevationEntry, kinds, event -> markDirty());
+        inst.addListener(lutBitsEntry, kinds, event -> markDirty());
+    }
+
+    /**
+     * Apply parameters from the config file and show them on the topics.
+     */
+    public synchronized void apply(DetectionParams params) {
+        detector.setParams(params);
+        publish(params);
+        System.out.println("Camera '" + name + "' detection: " + params);
+    }
+
+    public DetectionParams getParams() {
+        return detector.getParams();
+    }
+
+    private void publish(DetectionParams params) {
+        lowerEntry.set(hsv(params.lower));
+        upperEntry.set(hsv(params.upper));
+        minAreaEntry.set(params.minArea);
+        kernelEntry.set(params.kernelSize);
+        fovEntry.set(params.fov);
+        elevationEntry.set(params.camElevation);
+        lutBitsEntry.set(params.lutBits);
+    }
+
+    private void markDirty() {
+        if (dirty.compareAndSet(false, true)) {
+            rebuilder.execute(this::rebuild);
+        }
+    }
+
+    private synchronized void rebuild() {
+        dirty.set(false);
+        DetectionParams current = detector.getParams();
+        double[] lower = lowerEntry.get();
+        double[] upper = upperEntry.get();
+        if (lower.length != 3 || upper.length != 3) {
+            System.err.println("camera '" + name + "': HSV bounds need 3 values; ignoring edit");
+            return;
+        }
+        try {
+            DetectionParams params = new DetectionParams(new Scalar(lower), new Scalar(upper), minAreaEntry.get(),
+                    (int) kernelEntry.get(), fovEntry.get(), elevationEntry.get(), current.ringRadius,
+                    (int) lutBitsEntry.get(), current.calibration, current);
+            detector.setParams(params);
+            System.out.println("Camera '" + name + "' detection retuned: " + params);
+        } catch (IllegalArgumentException ex) {
+            System.err.println("camera '" + name + "': " + ex.getMessage() + "; ignoring edit");
+        }
+    }
+
+    private static double[] hsv(Scalar scalar) {
+        return new double[] { scalar.val[0], scalar.val[1], scalar.val[2] };
+    }
+}
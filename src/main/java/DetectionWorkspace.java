@@ -0,0 +1,202 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Preallocated buffers for note detection, one workspace per detection thread
+ * and one per segmentation stripe.
+ *
+ * <p>
+ * Every native Mat the detector touches either lives here for the life of the
+ * workspace or is counted while it is alive, so {@link #liveMats()} shows
+ * whether a return path leaks. Contour points are read into a primitive buffer
+ * instead of boxed Point lists.
+ */
+public final class DetectionWorkspace {
+    private static final AtomicInteger liveMats = new AtomicInteger();
+
+    private static final ThreadLocal<DetectionWorkspace> workspaces = ThreadLocal
+            .withInitial(DetectionWorkspace::new);
+
+    /* Mats owned for the life of the workspace, freed by free() */
+    private final List<Mat> owned = new ArrayList<>();
+
+    public final Mat scaled = track(new Mat());
+    public final Mat hsv = track(new Mat());
+    public final Mat mask = track(new Mat());
+    public final Mat morphed = track(new Mat());
+    public final Mat hierarchy = track(new Mat());
+    public final MatOfPoint2f contour2f = track(new MatOfPoint2f());
+    public final MatOfPoint2f approxCurve = track(new MatOfPoint2f());
+    public final Mat labels = track(new Mat());
+    public final Mat stats = track(new Mat());
+    public final Mat centroids = track(new Mat());
+
+    /* Presence gate samples, kept apart so full-size buffers keep their size */
+    public final Mat sample = track(new Mat());
+    public final Mat sampleHsv = track(new Mat());
+    public final Mat sampleMask = track(new Mat());
+
+    /* Filled by findContours; the Mats in it are counted until release() */
+    public final List<MatOfPoint> contours = new ArrayList<>();
+
+    /* Submatrix headers handed out by view(); counted until release() */
+    private final List<Mat> views = new ArrayList<>();
+
+    /* Offset added to contour points when only a region is processed */
+    public final Point contourOffset = new Point();
+
+    /* Interleaved x, y contour coordinates */
+    public int[] points = new int[256];
+
+    /* Interleaved x, y vertices of a four-sided approximation */
+    public final float[] quad = new float[8];
+
+    /* Connected-component statistics, CC_STAT_MAX ints per label */
+    private int[] componentStats = new int[16 * Imgproc.CC_STAT_MAX];
+
+    /* Java-side pixel buffers for lookup-table thresholding */
+    private byte[] pixels = new byte[0];
+    private byte[] maskPixels = new byte[0];
+
+    /* Reused size for resizing */
+    public final Size size = new Size();
+
+    /**
+     * Create a workspace not tied to a thread, such as a segmentation stripe's.
+     * The owner must free() it.
+     */
+    DetectionWorkspace() {
+    }
+
+    /**
+     * Get the calling thread's workspace.
+     */
+    public static DetectionWorkspace current() {
+        return workspaces.get();
+    }
+
+    /**
+     * Number of native Mats currently owned by all workspaces, including
+     * contours that have not been released yet.
+     */
+    public static int liveMats() {
+        return liveMats.get();
+    }
+
+    private <T extends Mat> T track(T mat) {
+        owned.add(mat);
+        liveMats.incrementAndGet();
+        return mat;
+    }
+
+    /**
+     * Find external contours in the morphed mask, counting each returned Mat.
+     * Points are shifted by {@link #contourOffset}.
+     */
+    public void findContours() {
+        Imgproc.findContours(morphed, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE,
+                contourOffset);
+        liveMats.addAndGet(contours.size());
+    }
+
+    /**
+     * Get a header for a region of a Mat. The header shares the parent's pixels
+     * and is counted until release().
+     */
+    public Mat view(Mat parent, Rect region) {
+        Mat view = parent.submat(region);
+        liveMats.incrementAndGet();
+        views.add(view);
+        return view;
+    }
+
+    /**
+     * Release the contours and views produced while processing a frame.
+     */
+    public void release() {
+        for (int i = 0; i < contours.size(); i++) {
+            contours.get(i).release();
+        }
+        liveMats.addAndGet(-contours.size());
+        contours.clear();
+
+        for (int i = 0; i < views.size(); i++) {
+            views.get(i).release();
+        }
+        liveMats.addAndGet(-views.size());
+        views.clear();
+    }
+
+    /**
+     * Release every Mat the workspace owns. The workspace must not be used
+     * after this.
+     */
+    public void free() {
+        release();
+        for (int i = 0; i < owned.size(); i++) {
+            owned.get(i).release();
+        }
+        liveMats.addAndGet(-owned.size());
+        owned.clear();
+    }
+
+    /**
+     * Copy a point Mat's coordinates into {@link #points}, growing it if needed.
+     *
+     * @return number of points read
+     */
+    public int readPoints(Mat contour) {
+        int count = (int) contour.total();
+        if (points.length < count * 2) {
+            points = new int[count * 4];
+        }
+        contour.get(0, 0, points);
+        return count;
+    }
+
+    /**
+     * Copy {@link #stats} for a number of labels into a primitive buffer,
+     * growing it if needed.
+     */
+    public int[] readStats(int labels) {
+        int count = labels * Imgproc.CC_STAT_MAX;
+        if (componentStats.length < count) {
+            componentStats = new int[count * 2];
+        }
+        stats.get(0, 0, componentStats);
+        return componentStats;
+    }
+
+    /**
+     * Get a pixel buffer of at least the given size, growing it if needed.
+     */
+    public byte[] pixelBuffer(int size) {
+        if (pixels.length < size) {
+            pixels = new byte[size];
+        }
+        return pixels;
+    }
+
+    /**
+     * Get a mask buffer of at least the given size, growing it if needed.
+     */
+    public byte[] maskBuffer(int size) {
+        if (maskPixels.length < size) {
+            maskPixels = new byte[size];
+        }
+        return maskPixels;
+    }
+}
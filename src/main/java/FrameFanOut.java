@@ -0,0 +1,290 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import edu.wpi.first.cscore.VideoMode.PixelFormat;
+
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Shares one camera's frames between several pipelines, each running on its
+ * own thread at its own rate.
+ *
+ * <p>
+ * The fan-out thread is the grabber's only consumer. It copies each frame
+ * into a pooled slot once, converts the BGR and grayscale intermediates any
+ * branch asked for once, and publishes the slot as the newest frame. Each
+ * {@link Branch} is a {@link FrameSource} for one pipeline's runner and takes
+ * the newest slot when its pipeline is ready, holding it read-only until its
+ * next take. With one slot per branch plus the newest and one being filled
+ * there is always a free slot, so a slow branch only skips frames itself and
+ * never holds up the others or the grabber.
+ */
+public final class FrameFanOut implements AutoCloseable {
+    /**
+     * What a branch's frames hold.
+     */
+    public enum Input {
+        /* The grabber's own frames: BGR, or YUYV or gray from a raw grabber */
+        FRAME,
+        BGR,
+        GRAY,
+    }
+
+    private static final double TAKE_TIMEOUT = 0.5;
+
+    private final FrameGrabber grabber;
+    private final PixelFormat format;
+    private final List<Branch> branches = new ArrayList<>();
+    private final Thread thread;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition frameReady = lock.newCondition();
+    private Slot[] slots;
+    private Slot newest;
+    private boolean convertBgr;
+    private boolean convertGray;
+
+    private volatile boolean running;
+
+    /**
+     * One pooled frame and its intermediates. Only the fan-out thread writes a
+     * slot, and only while no branch holds it and it is not the newest.
+     */
+    private static final class Slot {
+        final int index;
+        final Mat frame = new Mat();
+        final Mat bgr = new Mat();
+        final Mat gray = new Mat();
+        long captureTime;
+        long sequence;
+        /* Branches holding this slot, under the lock */
+        int users;
+
+        /* Two-channel header over a YUYV frame, rebuilt when the frame moves */
+        Mat packed = new Mat();
+        long packedData;
+
+        Slot(int index) {
+            this.index = index;
+        }
+
+        Mat packed() {
+            if (frame.dataAddr() != packedData) {
+                packed.release();
+                packed = frame.reshape(2);
+                packedData = frame.dataAddr();
+            }
+            return packed;
+        }
+
+        void release() {
+            frame.release();
+            bgr.release();
+            gray.release();
+            packed.release();
+        }
+    }
+
+    /**
+     * Frames for one pipeline. Like a grabber, a branch has a single consumer
+     * and hands out only the newest frame.
+     */
+    public final class Branch implements FrameSource {
+        private final Input input;
+        private FrameGrabber.Frame[] views;
+        private Slot held;
+        private long lastSequence;
+        private long overwritten;
+
+        private Branch(Input input) {
+            this.input = input;
+        }
+
+        @Override
+        public String getName() {
+            return grabber.getName();
+        }
+
+        @Override
+        public FrameGrabber.Frame take(double timeoutSeconds) throws InterruptedException {
+            long nanos = (long) (timeoutSeconds * 1e9);
+            lock.lock();
+            try {
+                if (held != null) {
+                    held.users--;
+                    held = null;
+                }
+                while (newest == null || newest.sequence <= lastSequence) {
+                    if (nanos <= 0) {
+                        return null;
+                    }
+                    nanos = frameReady.awaitNanos(nanos);
+                }
+                Slot slot = newest;
+                slot.users++;
+                held = slot;
+                if (lastSequence > 0) {
+                    overwritten += slot.sequence - lastSequence - 1;
+                }
+                lastSequence = slot.sequence;
+
+                FrameGrabber.Frame view = views[slot.index];
+                view.captureTime = slot.captureTime;
+                view.sequence = slot.sequence;
+                return view;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public long getOverwritten() {
+            return overwritten;
+        }
+
+        @Override
+        public long getDropped() {
+            return grabber.getDropped();
+        }
+    }
+
+    /**
+     * Create a fan-out for a started grabber. Add branches, then call start().
+     */
+    public FrameFanOut(FrameGrabber grabber) {
+        this.grabber = grabber;
+        format = grabber.getPixelFormat();
+        thread = new Thread(this::run, "FanOut-" + grabber.getName());
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Add a pipeline's branch.
+     */
+    public Branch addBranch(Input input) {
+        if (slots != null) {
+            throw new IllegalStateException("add branches before starting the fan-out");
+        }
+        Branch branch = new Branch(input);
+        branches.add(branch);
+        return branch;
+    }
+
+    /**
+     * Allocate the slots and start taking frames.
+     */
+    public void start() {
+        slots = new Slot[branches.size() + 2];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Slot(i);
+        }
+        for (Branch branch : branches) {
+            convertBgr |= branch.input == Input.BGR && format != PixelFormat.kBGR;
+            convertGray |= branch.input == Input.GRAY && format != PixelFormat.kGray;
+            branch.views = new FrameGrabber.Frame[slots.length];
+            for (Slot slot : slots) {
+                branch.views[slot.index] = new FrameGrabber.Frame(mat(slot, branch.input));
+            }
+        }
+        running = true;
+        thread.start();
+    }
+
+    private Mat mat(Slot slot, Input input) {
+        switch (input) {
+            case BGR:
+                return format == PixelFormat.kBGR ? slot.frame : slot.bgr;
+            case GRAY:
+                return format == PixelFormat.kGray ? slot.frame : slot.gray;
+            default:
+                return slot.frame;
+        }
+    }
+
+    private void run() {
+        while (running) {
+            FrameGrabber.Frame frame;
+            try {
+                frame = grabber.take(TAKE_TIMEOUT);
+            } catch (InterruptedException ex) {
+                return;
+            }
+            if (frame == null) {
+                continue;
+            }
+
+            Slot slot = freeSlot();
+            fill(slot, frame.mat);
+
+            lock.lock();
+            try {
+                slot.captureTime = frame.captureTime;
+                slot.sequence = frame.sequence;
+                newest = slot;
+                frameReady.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private Slot freeSlot() {
+        lock.lock();
+        try {
+            for (Slot slot : slots) {
+                if (slot.users == 0 && slot != newest) {
+                    return slot;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        // Each branch holds at most one slot, so this cannot happen
+        throw new IllegalStateException("no free frame slot");
+    }
+
+    private void fill(Slot slot, Mat frame) {
+        frame.copyTo(slot.frame);
+        if (convertBgr) {
+            if (format == PixelFormat.kYUYV) {
+                Imgproc.cvtColor(slot.packed(), slot.bgr, Imgproc.COLOR_YUV2BGR_YUYV);
+            } else {
+                Imgproc.cvtColor(slot.frame, slot.bgr, Imgproc.COLOR_GRAY2BGR);
+            }
+        }
+        if (convertGray) {
+            if (format == PixelFormat.kYUYV) {
+                Imgproc.cvtColor(slot.packed(), slot.gray, Imgproc.COLOR_YUV2GRAY_YUYV);
+            } else {
+                Imgproc.cvtColor(slot.frame, slot.gray, Imgproc.COLOR_BGR2GRAY);
+            }
+        }
+    }
+
+    /**
+     * Stop the fan-out thread and free the slots. Stop the branches' runners
+     * first.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (slots != null) {
+            for (Slot slot : slots) {
+                slot.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,288 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import edu.wpi.first.cscore.CvSink;
+import edu.wpi.first.cscore.ImageSink;
+import edu.wpi.first.cscore.VideoMode.PixelFormat;
+import edu.wpi.first.cscore.VideoSource;
+
+import org.opencv.core.Mat;
+
+/**
+ * Long-lived frame capture for one camera.
+ *
+ * <p>
+ * Owns a single sink and a grab thread that fills a pool of three reused
+ * Mats: one being written, one holding the newest complete frame and one lent
+ * out to the consumer. A grabber has a single consumer, which gets frames from
+ * {@link #take(double)} or {@link #latest()}. Any source works, including a
+ * CvSource stand-in, so it can run without a USB camera.
+ */
+public class FrameGrabber implements FrameSource, AutoCloseable {
+    /**
+     * A captured frame. The Mat belongs to the grabber and stays valid until the
+     * consumer takes the next frame; never release it.
+     */
+    public static class Frame {
+        public final Mat mat;
+        /* Capture time in microseconds, on the NetworkTables time base */
+        public long captureTime;
+        /* Sequence number, starting at 1 for the first grabbed frame */
+        public long sequence;
+
+        public Frame() {
+            this(new Mat());
+        }
+
+        /**
+         * Create a frame over a Mat owned by someone else.
+         */
+        protected Frame(Mat mat) {
+            this.mat = mat;
+        }
+    }
+
+    private static final double GRAB_TIMEOUT = 0.5;
+
+    private final String name;
+    protected final ImageSink sink;
+    private final Thread thread;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition frameReady = lock.newCondition();
+    private final Condition frameTaken = lock.newCondition();
+    private Frame writing = new Frame();
+    private Frame ready = new Frame();
+    private Frame reading = new Frame();
+    private boolean readyIsNew;
+    private long taken;
+    private volatile FrameRecorder recorder;
+
+    private volatile boolean running;
+    private volatile long grabbed;
+    private volatile long dropped;
+    private volatile long overwritten;
+
+    /**
+     * Create a grabber for a source that delivers BGR frames. Call start() to
+     * begin grabbing.
+     */
+    public FrameGrabber(String name, VideoSource source) {
+        this(name, source, new CvSink("grabber_" + name));
+    }
+
+    /**
+     * Create a grabber around a subclass's own sink.
+     */
+    protected FrameGrabber(String name, VideoSource source, ImageSink sink) {
+        this.name = name;
+        this.sink = sink;
+        sink.setSource(source);
+        thread = new Thread(this::run, "FrameGrabber-" + name);
+        thread.setDaemon(true);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Pixel format of the frames this grabber hands out.
+     */
+    public PixelFormat getPixelFormat() {
+        return PixelFormat.kBGR;
+    }
+
+    /**
+     * Record every grabbed frame, or stop recording with null. The grabber does
+     * not close the recorder.
+     */
+    public void setRecorder(FrameRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Start the grab thread.
+     */
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    private void run() {
+        while (running) {
+            Frame frame = writing;
+            long time = grab(frame.mat, GRAB_TIMEOUT);
+            if (time == 0) {
+                dropped++;
+                continue;
+            }
+
+            long sequence;
+            lock.lock();
+            try {
+                frame.captureTime = time;
+                frame.sequence = sequence = ++grabbed;
+                if (readyIsNew) {
+                    overwritten++;
+                }
+                writing = ready;
+                ready = frame;
+                readyIsNew = true;
+                frameReady.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            // Only this thread writes into a published frame, and not until it
+            // comes back round as the writing slot, so the consumer and recorder
+            // can both read it
+            FrameRecorder r = recorder;
+            if (r != null) {
+                r.write(frame.mat, time, sequence);
+            }
+        }
+    }
+
+    /**
+     * Grab one frame into a pooled Mat.
+     *
+     * @return capture time in microseconds, or 0 on timeout or error
+     */
+    protected long grab(Mat mat, double timeout) {
+        return ((CvSink) sink).grabFrame(mat, timeout);
+    }
+
+    /**
+     * Wait for a frame newer than the last one handed out.
+     *
+     * @return the frame, or null if none arrived within the timeout
+     */
+    @Override
+    public Frame take(double timeoutSeconds) throws InterruptedException {
+        long nanos = (long) (timeoutSeconds * 1e9);
+        lock.lock();
+        try {
+            while (!readyIsNew) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = frameReady.awaitNanos(nanos);
+            }
+            return swapReady();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the newest frame without waiting. If nothing new arrived since the last
+     * call, the previously returned frame is returned again.
+     *
+     * @return the frame, or null if no frame has been grabbed yet
+     */
+    public Frame latest() {
+        lock.lock();
+        try {
+            if (readyIsNew) {
+                return swapReady();
+            }
+            return reading.sequence == 0 ? null : reading;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Frame swapReady() {
+        Frame frame = ready;
+        ready = reading;
+        reading = frame;
+        readyIsNew = false;
+        taken = frame.sequence;
+        frameTaken.signalAll();
+        return frame;
+    }
+
+    /**
+     * Wait until a frame after the given sequence number has been grabbed.
+     *
+     * @return false on timeout
+     */
+    public boolean awaitGrabbed(long sequence, double timeoutSeconds) throws InterruptedException {
+        long nanos = (long) (timeoutSeconds * 1e9);
+        lock.lock();
+        try {
+            while (grabbed <= sequence) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = frameReady.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until the consumer has taken the frame with the given sequence number
+     * or a later one.
+     *
+     * @return false on timeout
+     */
+    public boolean awaitTaken(long sequence, double timeoutSeconds) throws InterruptedException {
+        long nanos = (long) (timeoutSeconds * 1e9);
+        lock.lock();
+        try {
+            while (taken < sequence) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = frameTaken.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Frames successfully grabbed from the source. */
+    public long getGrabbed() {
+        return grabbed;
+    }
+
+    /** Grab attempts that timed out or failed. */
+    @Override
+    public long getDropped() {
+        return dropped;
+    }
+
+    /** Grabbed frames replaced by a newer one before the consumer saw them. */
+    @Override
+    public long getOverwritten() {
+        return overwritten;
+    }
+
+    /**
+     * Stop the grab thread and free the sink and buffers.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        sink.close();
+        writing.mat.release();
+        ready.mat.release();
+        reading.mat.release();
+    }
+}
@@ -0,0 +1,144 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import edu.wpi.first.cscore.VideoMode.PixelFormat;
+
+import org.opencv.core.Mat;
+
+/**
+ * Records grabbed frames and their capture times to a single memory-mapped
+ * file, for replay with {@link ReplaySource}.
+ *
+ * <p>
+ * The file is sized up front and mapped once. Each frame is copied straight
+ * from its Mat into the mapping, one memcpy into the page cache with no Java
+ * heap copy, and the kernel writes it out in the background. Recording stops
+ * quietly when the file is full. The frame count in the header is updated
+ * after every frame, so a file cut short by a crash or power loss still reads
+ * back up to its last complete frame.
+ *
+ * <pre>
+ * header: int magic, int version, int pixel format, int reserved, long frame count
+ * frame:  long capture time (us), long sequence, int rows, int cols, int type, int length, data
+ * </pre>
+ *
+ * <p>
+ * All values are little-endian. Frame data is the Mat's pixels, row by row
+ * without padding; YUYV frames keep their width/2 macropixel layout.
+ */
+public final class FrameRecorder implements AutoCloseable {
+    static final int MAGIC = 0x43455246; // "FREC"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 24;
+    static final int FRAME_HEADER_SIZE = 32;
+    static final int COUNT_OFFSET = 16;
+
+    /* Space left free on the disk however large the limit */
+    private static final long DISK_RESERVE = 64L << 20;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int position = HEADER_SIZE;
+    private long frames;
+    private boolean full;
+    private boolean closed;
+
+    /**
+     * Create a recording file, replacing any existing file at the path.
+     *
+     * @param path     file to write
+     * @param maxBytes file size limit; capped to what fits on the disk and to 2 GiB
+     * @param format   pixel format of the recorded Mats
+     */
+    public FrameRecorder(Path path, long maxBytes, PixelFormat format) throws IOException {
+        this.path = path;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            // The mapping is sparse; writing past the free space would crash the
+            // process instead of failing a write, so never map more than is free
+            long free = Files.getFileStore(path).getUsableSpace() - DISK_RESERVE;
+            long size = Math.min(Math.min(maxBytes, free), Integer.MAX_VALUE);
+            if (size < HEADER_SIZE) {
+                throw new IOException("not enough disk space to record to " + path);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, format.getValue());
+        buffer.putLong(COUNT_OFFSET, 0);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /** Frames written so far. */
+    public synchronized long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Append a frame. Does nothing once the file is full or closed.
+     *
+     * @param mat         frame pixels
+     * @param captureTime capture time in microseconds
+     * @param sequence    grabber sequence number
+     */
+    public synchronized void write(Mat mat, long captureTime, long sequence) {
+        if (full || closed) {
+            return;
+        }
+        int length = (int) (mat.total() * mat.elemSize());
+        if (position + FRAME_HEADER_SIZE + length > buffer.capacity()) {
+            full = true;
+            System.out.println("Recording '" + path + "' full after " + frames + " frames");
+            return;
+        }
+
+        buffer.putLong(position, captureTime);
+        buffer.putLong(position + 8, sequence);
+        buffer.putInt(position + 16, mat.rows());
+        buffer.putInt(position + 20, mat.cols());
+        buffer.putInt(position + 24, mat.type());
+        buffer.putInt(position + 28, length);
+
+        Mat view = new Mat(mat.rows(), mat.cols(), mat.type(),
+                buffer.slice(position + FRAME_HEADER_SIZE, length));
+        mat.copyTo(view);
+        view.release();
+
+        position += FRAME_HEADER_SIZE + length;
+        buffer.putLong(COUNT_OFFSET, ++frames);
+    }
+
+    /**
+     * Flush the mapping and trim the file to the frames written. Safe to call
+     * while another thread is writing.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        buffer.force();
+        channel.truncate(position);
+        channel.close();
+    }
+}
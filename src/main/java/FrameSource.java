@@ -0,0 +1,28 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+/**
+ * Frames for a single consumer: a camera's {@link FrameGrabber}, or one
+ * branch of a {@link FrameFanOut} when several pipelines share a camera.
+ */
+public interface FrameSource {
+    /**
+     * Camera name, for log messages.
+     */
+    String getName();
+
+    /**
+     * Wait for a frame newer than the last one handed out. The frame stays
+     * valid until the next call.
+     *
+     * @return the frame, or null if none arrived within the timeout
+     */
+    FrameGrabber.Frame take(double timeoutSeconds) throws InterruptedException;
+
+    /** Frames replaced by a newer one before the consumer saw them. */
+    long getOverwritten();
+
+    /** Grab attempts that timed out or failed. */
+    long getDropped();
+}
@@ -0,0 +1,92 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size histogram of durations in nanoseconds with log-spaced buckets.
+ *
+ * <p>
+ * Each power of two is split into 8 buckets, so percentiles are within about
+ * 6% of the true value over the whole range, and recording is a few shifts and
+ * an array increment with no allocation. The maximum is kept exactly. Not
+ * thread-safe; one thread records and reads.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final long[] counts = new long[(64 - SUB_BITS + 1) * SUB_BUCKETS];
+    private long count;
+    private long max;
+
+    /**
+     * Record one duration. Negative durations count as zero.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts[bucket(value)]++;
+        count++;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /** Durations recorded since the last reset. */
+    public long getCount() {
+        return count;
+    }
+
+    /** Longest duration recorded since the last reset, in nanoseconds. */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Duration at a percentile, in nanoseconds, or 0 if nothing was recorded.
+     *
+     * @param percentile 0 to 100
+     */
+    public long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(max, midpoint(i));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Forget all recorded durations.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        max = 0;
+    }
+
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long midpoint(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lower + ((1L << shift) >> 1);
+    }
+}
@@ -3,14 +3,20 @@
 // the WPILib BSD license file in the root directory of this project.
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.stream.Collectors;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -20,11 +26,11 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
 import edu.wpi.first.cameraserver.CameraServer;
-import edu.wpi.first.cscore.CvSink;
 import edu.wpi.first.cscore.CvSource;
 import edu.wpi.first.cscore.MjpegServer;
 import edu.wpi.first.cscore.UsbCamera;
 import edu.wpi.first.cscore.VideoMode.PixelFormat;
+import edu.wpi.first.cscore.VideoSink;
 import edu.wpi.first.cscore.VideoSource;
 import edu.wpi.first.networktables.NetworkTable;
 import edu.wpi.first.networktables.NetworkTableEvent;
@@ -33,29 +39,33 @@ import edu.wpi.first.networktables.NetworkTableInstance;
 // import edu.wpi.first.networktables.StringTopic;
 // import edu.wpi.first.networktables.BooleanPublisher;
 // import edu.wpi.first.networktables.BooleanTopic;
-import edu.wpi.first.networktables.DoubleArrayPublisher;
-// import edu.wpi.first.networktables.DoublePublisher;
-import edu.wpi.first.vision.VisionPipeline;
-import edu.wpi.first.vision.VisionThread;
 
 import org.opencv.core.Core;
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfPoint;
-import org.opencv.core.MatOfPoint2f;
-import org.opencv.core.Point;
 import org.opencv.core.Scalar;
-import org.opencv.core.Size;
-import org.opencv.imgproc.Imgproc;
 
 /*
    JSON format:
    {
        "team": <team number>,
        "ntmode": <"client" or "server", "client" if unspecified>
+       "max processing fps": <note detection rate cap, unlimited if unspecified> // optional
+       "results": <"topics", "packed" or "both", "topics" if unspecified> // optional
+       "frame deadline": <capture-to-result deadline in ms, 100 if unspecified, 0 disables> // optional
+       "cpu budget": <fraction of a core each camera's detection may use, 1 if unspecified> // optional
+       "prediction rate": <PredictedNotePose updates per second, 100 if unspecified, 0 disables> // optional
+       "match log": <directory to log every frame's results to> // optional
+       "match log limit": <disk space for match logs in MB, including earlier runs, 1024 if unspecified> // optional
        "cameras": [
            {
                "name": <camera name>
-               "path": <path, e.g. "/dev/video0">
+               "path": <path, e.g. "/dev/video0", or the recording file for replay>
+               "source": <"usb", "test" or "replay", "usb" if unspecified> // optional
+               "replay speed": <"recorded" or "max", "recorded" if unspecified> // optional
+               "replay loop": <true to restart at the end of the recording, true if unspecified> // optional
+               "record": <directory to record grabbed frames to> // optional
+               "record limit": <recording file size limit in MB, 1024 if unspecified> // optional
                "pixel format": <"MJPEG", "YUYV", etc>   // optional
                "width": <video mode width>              // optional
                "height": <video mode height>            // optional
@@ -63,6 +73,45 @@ import org.opencv.imgproc.Imgproc;
                "brightness": <percentage brightness>    // optional
                "white balance": <"auto", "hold", value> // optional
                "exposure": <"auto", "hold", value>      // optional
+               "fov": <horizontal field of view in radians> // optional
+               "elevation": <lens height above the floor in meters> // optional
+               "calibration": {                         // optional, replaces fov
+                   "width": <calibration image width>,
+                   "height": <calibration image height>,
+                   "camera matrix": [<fx>, 0, <cx>, 0, <fy>, <cy>, 0, 0, 1],
+                   "distortion": [<k1>, <k2>, <p1>, <p2>, <k3>] // 4, 5 or 8 values
+               }
+               "core": <CPU core to pin the detection thread to> // optional
+               "tracking refresh": <frames between full-frame searches while tracking a note, 0 disables> // optional
+               "tracking margin": <tracking window padding as a fraction of note size> // optional
+               "hsv low": [<h>, <s>, <v>]               // optional, [0, 100, 100] if unspecified
+               "hsv high": [<h>, <s>, <v>]              // optional, [20, 255, 255] if unspecified
+               "min area": <smallest note blob in pixels, 100 if unspecified> // optional
+               "kernel size": <erode/dilate kernel side in pixels, 5 if unspecified> // optional
+               "threshold": <"hsv" or "lut", "hsv" if unspecified; lut is slower, see colorLutCheck> // optional
+               "lut bits": <lookup table bits per color channel, 1-8, 6 if unspecified> // optional
+               "overlay fps": <debug overlay stream rate cap, 15 if unspecified, 0 for every frame> // optional
+               "overlay width": <debug overlay stream width, camera width if unspecified> // optional
+               "overlay height": <debug overlay stream height, camera height if unspecified> // optional
+               "segmentation threads": <threads sharing thresholding and morphology, 1 if unspecified> // optional
+               "processing scales": [<downsampling levels, 0-1, largest first>] // optional, [1] if unspecified
+               "latency target": <processing time in ms the scale is adapted to, 30 if unspecified> // optional
+               "presence gate": <percent of sampled pixels that must be orange to run full detection> // optional
+               // frames under it skip the full pipeline; 0 or unspecified runs every frame in full
+               "presence gate step": <pixels between presence samples each way, 8 if unspecified> // optional
+               "detection": <"single" or "multi", "single" if unspecified> // optional
+               "max notes": <most note candidates published in multi mode, 4 if unspecified> // optional
+               "filter alpha": <note filter position gain, 0-1, 0.5 if unspecified> // optional
+               "filter beta": <note filter velocity gain, 0-1, 0.1 if unspecified> // optional
+               "dropout timeout": <seconds a filtered note survives undetected, 0.5 if unspecified> // optional
+               "apriltag family": <AprilTag family to detect alongside notes, such as "tag16h5"> // optional
+               // tag detection shares each grabbed frame with note detection on its own thread
+               "apriltag size": <tag edge length in meters, 0.1524 if unspecified> // optional
+               "apriltag max fps": <tag detection rate cap, unlimited if unspecified> // optional
+               "apriltag decimate": <tag quad decimation, 2 if unspecified> // optional
+               "apriltag threads": <tag detector threads, 1 if unspecified> // optional
+               "processing format": <"BGR" or "YUYV", "BGR" if unspecified> // optional
+               // YUYV skips decode and BGR conversion; needs "pixel format": "YUYV"
                "properties": [                          // optional
                    {
                        "name": <property name>
@@ -79,6 +128,9 @@ import org.opencv.imgproc.Imgproc;
                }
            }
        ]
+       // While running, edits to detection settings, camera properties and
+       // stream settings are applied live; other changes need a restart.
+       // Detection settings can also be tuned under Camera/<name>/tuning.
        "switched cameras": [
            {
                "name": <virtual camera name>
@@ -93,22 +145,58 @@ import org.opencv.imgproc.Imgproc;
 public final class Main {
     private static String configFile = "/boot/frc.json";
 
-    private final static CvSource outputStream = new CvSource("ProcessedVideo", PixelFormat.kMJPEG, 160, 120, 30);
-    private final static MjpegServer mjpegServer = new MjpegServer("serve_ProcessedVideo", 1184);
-    static {
-        mjpegServer.setSource(outputStream);
-    }
+    /* Note radius in meters */
+    private final static double NOTE_RADIUS = 0.1778;
 
     private final static NetworkTableInstance inst = NetworkTableInstance.getDefault();
 
-    /* Robot pose for field positioning */
+    /* Note poses for field positioning, one subtable per camera */
     private final static NetworkTable table = inst.getTable("Camera");
-    private final static DoubleArrayPublisher colPub2 = table.getDoubleArrayTopic("NotePose").publish();
+
+    /* Stage timing and pipeline health, one subtable per camera */
+    private final static NetworkTable diagnosticsTable = table.getSubTable("diagnostics");
 
     @SuppressWarnings("MemberName")
     public static class CameraConfig {
         public String name;
         public String path;
+        public String source;
+        public boolean replayMaxSpeed;
+        public boolean replayLoop;
+        public String recordDir;
+        public long recordLimit;
+        public int width;
+        public int height;
+        public double fov;
+        public double elevation;
+        public CameraCalibration calibration;
+        public int core;
+        public int trackingRefresh;
+        public double trackingMargin;
+        public Scalar lowerHsv;
+        public Scalar upperHsv;
+        public double minArea;
+        public int kernelSize;
+        public boolean useColorLut;
+        public int colorLutBits;
+        public int maxNotes;
+        public int segmentationThreads;
+        public double[] processingScales;
+        public double latencyTarget;
+        public double presenceCoverage;
+        public int presenceStep;
+        public String aprilTagFamily;
+        public double aprilTagSize;
+        public double aprilTagFps;
+        public double aprilTagDecimate;
+        public int aprilTagThreads;
+        public double overlayFps;
+        public int overlayWidth;
+        public int overlayHeight;
+        public double filterAlpha;
+        public double filterBeta;
+        public double dropoutTimeout;
+        public PixelFormat processingFormat;
         public JsonObject config;
         public JsonElement streamConfig;
     }
@@ -119,11 +207,51 @@ public final class Main {
         public String key;
     };
 
-    public static int team;
-    public static boolean server;
+    /**
+     * Settings outside the camera lists, starting from their defaults.
+     */
+    @SuppressWarnings("MemberName")
+    public static class GlobalConfig {
+        public int team;
+        public boolean server;
+        public double maxProcessingFps;
+        /* Separate result topics, one packed NoteFrame record per frame, or both */
+        public NotePublisher.Output resultOutput = NotePublisher.Output.TOPICS;
+        /* Seconds from capture after which a frame is stale, or 0 for no deadline */
+        public double frameDeadline = 0.1;
+        public double cpuBudget = 1.0;
+        public double predictionRate = 100;
+        public String matchLogDir;
+        public long matchLogLimit = 1024L << 20;
+    }
+
+    /* The running settings; a reload only changes the live ones */
+    public static GlobalConfig global = new GlobalConfig();
     public static List<CameraConfig> cameraConfigs = new ArrayList<>();
     public static List<SwitchedCameraConfig> switchedCameraConfigs = new ArrayList<>();
     public static List<VideoSource> cameras = new ArrayList<>();
+    public static List<FrameGrabber> grabbers = new ArrayList<>();
+    public static List<FrameRecorder> recorders = new ArrayList<>();
+    public static List<DetectionTuner> tuners = new ArrayList<>();
+    public static List<PipelineRunner<NoteDetector>> runners = new ArrayList<>();
+    public static List<PipelineRunner<AprilTagPipeline>> aprilTagRunners = new ArrayList<>();
+
+    /* Camera settings that a config reload applies without a restart */
+    private static final Set<String> LIVE_KEYS = Set.of("fov", "elevation", "calibration", "hsv low", "hsv high",
+            "min area", "kernel size", "threshold", "lut bits", "brightness", "white balance", "exposure",
+            "properties", "stream");
+
+    /* Publishes every camera's predicted note pose between frames, or null */
+    private static NotePredictor predictor;
+
+    /* Per-frame binary log of every camera, or null */
+    private static MatchLog matchLog;
+
+    /* Startup timing, published under Camera/startup */
+    private static StartupPhases startup;
+
+    /* Synthetic frames each detector runs before its first real frame */
+    private static final int WARMUP_FRAMES = 10;
 
     private Main() {
     }
@@ -138,7 +266,7 @@ public final class Main {
     /**
      * Read single camera configuration.
      */
-    public static boolean readCameraConfig(JsonObject config) {
+    public static boolean readCameraConfig(JsonObject config, List<CameraConfig> into) {
         CameraConfig cam = new CameraConfig();
 
         // name
@@ -157,19 +285,227 @@ public final class Main {
         }
         cam.path = pathElement.getAsString();
 
+        // source kind (optional)
+        JsonElement sourceElement = config.get("source");
+        cam.source = sourceElement == null ? "usb" : sourceElement.getAsString();
+        if (!"usb".equalsIgnoreCase(cam.source) && !"test".equalsIgnoreCase(cam.source)
+                && !"replay".equalsIgnoreCase(cam.source)) {
+            parseError("camera '" + cam.name + "': unknown source '" + cam.source + "'");
+            return false;
+        }
+
+        // replay options (optional)
+        if ("replay".equalsIgnoreCase(cam.source) && !Files.isReadable(Paths.get(cam.path))) {
+            parseError("camera '" + cam.name + "': cannot read recording '" + cam.path + "'");
+            return false;
+        }
+        String speed = config.has("replay speed") ? config.get("replay speed").getAsString() : "recorded";
+        if ("max".equalsIgnoreCase(speed)) {
+            cam.replayMaxSpeed = true;
+        } else if (!"recorded".equalsIgnoreCase(speed)) {
+            parseError("camera '" + cam.name + "': unknown replay speed '" + speed + "'");
+            return false;
+        }
+        cam.replayLoop = config.has("replay loop") ? config.get("replay loop").getAsBoolean() : true;
+
+        // frame recording (optional)
+        cam.recordDir = config.has("record") ? config.get("record").getAsString() : null;
+        cam.recordLimit = (config.has("record limit") ? config.get("record limit").getAsLong() : 1024) << 20;
+
+        // detection geometry (optional)
+        cam.width = config.has("width") ? config.get("width").getAsInt() : 160;
+        cam.height = config.has("height") ? config.get("height").getAsInt() : 120;
+        cam.fov = config.has("fov") ? config.get("fov").getAsDouble() : 0.9564404;
+        cam.elevation = config.has("elevation") ? config.get("elevation").getAsDouble() : 0.257556;
+
+        // lens calibration (optional)
+        if (config.has("calibration")) {
+            try {
+                cam.calibration = readCalibration(config.get("calibration").getAsJsonObject());
+            } catch (IllegalArgumentException | IllegalStateException ex) {
+                parseError("camera '" + cam.name + "': could not read calibration: " + ex.getMessage());
+                return false;
+            }
+        }
+
+        // region-of-interest tracking (optional)
+        cam.trackingRefresh = config.has("tracking refresh") ? config.get("tracking refresh").getAsInt() : 0;
+        cam.trackingMargin = config.has("tracking margin") ? config.get("tracking margin").getAsDouble() : 0.5;
+
+        // detection parameters (optional)
+        cam.lowerHsv = readHsv(config, "hsv low", NoteDetector.LOWER_ORANGE);
+        cam.upperHsv = readHsv(config, "hsv high", NoteDetector.UPPER_ORANGE);
+        if (cam.lowerHsv == null || cam.upperHsv == null) {
+            parseError("camera '" + cam.name + "': hsv low and hsv high need 3 values");
+            return false;
+        }
+        cam.minArea = config.has("min area") ? config.get("min area").getAsDouble() : 100;
+        cam.kernelSize = config.has("kernel size") ? config.get("kernel size").getAsInt() : 5;
+        if (cam.kernelSize < 1) {
+            parseError("camera '" + cam.name + "': kernel size must be at least 1");
+            return false;
+        }
+
+        // thresholding method (optional)
+        String threshold = config.has("threshold") ? config.get("threshold").getAsString() : "hsv";
+        if ("lut".equalsIgnoreCase(threshold)) {
+            cam.useColorLut = true;
+            System.out.println("camera '" + cam.name + "': lut threshold is slower than hsv on the hardware"
+                    + " measured so far; run colorLutCheck to compare");
+        } else if (!"hsv".equalsIgnoreCase(threshold)) {
+            parseError("camera '" + cam.name + "': unknown threshold '" + threshold + "'");
+            return false;
+        }
+        cam.colorLutBits = config.has("lut bits") ? config.get("lut bits").getAsInt() : 6;
+        if (cam.colorLutBits < 1 || cam.colorLutBits > 8) {
+            parseError("camera '" + cam.name + "': lut bits must be 1 to 8");
+            return false;
+        }
+
+        // debug overlay stream (optional); size 0 follows the camera
+        cam.overlayFps = config.has("overlay fps") ? config.get("overlay fps").getAsDouble() : 15;
+        cam.overlayWidth = config.has("overlay width") ? config.get("overlay width").getAsInt() : 0;
+        cam.overlayHeight = config.has("overlay height") ? config.get("overlay height").getAsInt() : 0;
+
+        // striped segmentation (optional)
+        cam.segmentationThreads = config.has("segmentation threads")
+                ? config.get("segmentation threads").getAsInt() : 1;
+        if (cam.segmentationThreads < 1) {
+            parseError("camera '" + cam.name + "': segmentation threads must be at least 1");
+            return false;
+        }
+
+        // adaptive processing scale (optional)
+        cam.processingScales = new double[] { 1.0 };
+        if (config.has("processing scales")) {
+            JsonArray scales = config.get("processing scales").getAsJsonArray();
+            cam.processingScales = new double[scales.size()];
+            for (int i = 0; i < scales.size(); i++) {
+                cam.processingScales[i] = scales.get(i).getAsDouble();
+                if (cam.processingScales[i] <= 0 || cam.processingScales[i] > 1) {
+                    parseError("camera '" + cam.name + "': processing scales must be above 0 and at most 1");
+                    return false;
+                }
+            }
+            if (cam.processingScales.length == 0) {
+                parseError("camera '" + cam.name + "': processing scales needs at least one level");
+                return false;
+            }
+        }
+        cam.latencyTarget = (config.has("latency target") ? config.get("latency target").getAsDouble() : 30) / 1000.0;
+
+        // orange presence gate (optional)
+        cam.presenceCoverage = (config.has("presence gate") ? config.get("presence gate").getAsDouble() : 0) / 100.0;
+        cam.presenceStep = config.has("presence gate step") ? config.get("presence gate step").getAsInt() : 8;
+        if (cam.presenceCoverage < 0 || cam.presenceCoverage >= 1) {
+            parseError("camera '" + cam.name + "': presence gate must be at least 0 and below 100 percent");
+            return false;
+        }
+        if (cam.presenceStep < 1) {
+            parseError("camera '" + cam.name + "': presence gate step must be at least 1");
+            return false;
+        }
+
+        // AprilTag detection (optional)
+        cam.aprilTagFamily = config.has("apriltag family") ? config.get("apriltag family").getAsString() : null;
+        cam.aprilTagSize = config.has("apriltag size") ? config.get("apriltag size").getAsDouble() : 0.1524;
+        cam.aprilTagFps = config.has("apriltag max fps") ? config.get("apriltag max fps").getAsDouble() : 0;
+        cam.aprilTagDecimate = config.has("apriltag decimate") ? config.get("apriltag decimate").getAsDouble() : 2;
+        cam.aprilTagThreads = config.has("apriltag threads") ? config.get("apriltag threads").getAsInt() : 1;
+        if (cam.aprilTagSize <= 0 || cam.aprilTagDecimate < 1 || cam.aprilTagThreads < 1) {
+            parseError("camera '" + cam.name + "': apriltag size must be positive, and decimate and threads"
+                    + " at least 1");
+            return false;
+        }
+
+        // multi-note detection (optional)
+        String detection = config.has("detection") ? config.get("detection").getAsString() : "single";
+        if ("multi".equalsIgnoreCase(detection)) {
+            cam.maxNotes = config.has("max notes") ? config.get("max notes").getAsInt() : 4;
+            if (cam.maxNotes < 1) {
+                parseError("camera '" + cam.name + "': max notes must be at least 1");
+                return false;
+            }
+        } else if (!"single".equalsIgnoreCase(detection)) {
+            parseError("camera '" + cam.name + "': unknown detection '" + detection + "'");
+            return false;
+        }
+
+        // note filter (optional)
+        cam.filterAlpha = config.has("filter alpha") ? config.get("filter alpha").getAsDouble() : 0.5;
+        cam.filterBeta = config.has("filter beta") ? config.get("filter beta").getAsDouble() : 0.1;
+        cam.dropoutTimeout = config.has("dropout timeout") ? config.get("dropout timeout").getAsDouble() : 0.5;
+        if (cam.filterAlpha <= 0 || cam.filterAlpha > 1 || cam.filterBeta < 0 || cam.filterBeta > 1) {
+            parseError("camera '" + cam.name + "': filter gains must be between 0 and 1");
+            return false;
+        }
+
+        // processing pixel format (optional)
+        String format = config.has("processing format") ? config.get("processing format").getAsString() : "BGR";
+        if ("BGR".equalsIgnoreCase(format)) {
+            cam.processingFormat = PixelFormat.kBGR;
+        } else if ("YUYV".equalsIgnoreCase(format)) {
+            cam.processingFormat = PixelFormat.kYUYV;
+            if (cam.useColorLut) {
+                parseError("camera '" + cam.name + "': lut threshold only works with BGR processing");
+                return false;
+            }
+            JsonElement pixelFormat = config.get("pixel format");
+            if (pixelFormat == null || !"YUYV".equalsIgnoreCase(pixelFormat.getAsString())) {
+                System.err.println("camera '" + cam.name
+                        + "': YUYV processing without YUYV pixel format; frames will be converted");
+            }
+        } else {
+            parseError("camera '" + cam.name + "': unknown processing format '" + format + "'");
+            return false;
+        }
+
+        // detection thread core (optional)
+        cam.core = config.has("core") ? config.get("core").getAsInt() : -1;
+
         // stream properties
         cam.streamConfig = config.get("stream");
 
         cam.config = config;
 
-        cameraConfigs.add(cam);
+        into.add(cam);
         return true;
     }
 
+    private static Scalar readHsv(JsonObject config, String key, Scalar defaultValue) {
+        if (!config.has(key)) {
+            return defaultValue;
+        }
+        JsonArray values = config.get(key).getAsJsonArray();
+        if (values.size() != 3) {
+            return null;
+        }
+        return new Scalar(values.get(0).getAsDouble(), values.get(1).getAsDouble(), values.get(2).getAsDouble());
+    }
+
+    private static CameraCalibration readCalibration(JsonObject config) {
+        for (String key : new String[] { "width", "height", "camera matrix", "distortion" }) {
+            if (!config.has(key)) {
+                throw new IllegalArgumentException("missing " + key);
+            }
+        }
+        return new CameraCalibration(config.get("width").getAsInt(), config.get("height").getAsInt(),
+                readDoubles(config.get("camera matrix").getAsJsonArray()),
+                readDoubles(config.get("distortion").getAsJsonArray()));
+    }
+
+    private static double[] readDoubles(JsonArray values) {
+        double[] result = new double[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i).getAsDouble();
+        }
+        return result;
+    }
+
     /**
      * Read single switched camera configuration.
      */
-    public static boolean readSwitchedCameraConfig(JsonObject config) {
+    public static boolean readSwitchedCameraConfig(JsonObject config, List<SwitchedCameraConfig> into) {
         SwitchedCameraConfig cam = new SwitchedCameraConfig();
 
         // name
@@ -188,15 +524,17 @@ public final class Main {
         }
         cam.key = keyElement.getAsString();
 
-        switchedCameraConfigs.add(cam);
+        into.add(cam);
         return true;
     }
 
     /**
-     * Read configuration file.
+     * Read configuration file. Nothing is applied: settings go into the given
+     * objects, which should start from their defaults.
      */
     @SuppressWarnings("PMD.CyclomaticComplexity")
-    public static boolean readConfig() {
+    public static boolean readConfig(GlobalConfig settings, List<CameraConfig> cameraConfigs,
+            List<SwitchedCameraConfig> switchedCameraConfigs) {
         // parse file
         JsonElement top;
         try {
@@ -219,20 +557,69 @@ public final class Main {
             parseError("could not read team number");
             return false;
         }
-        team = teamElement.getAsInt();
+        settings.team = teamElement.getAsInt();
 
         // ntmode (optional)
         if (obj.has("ntmode")) {
             String str = obj.get("ntmode").getAsString();
             if ("client".equalsIgnoreCase(str)) {
-                server = false;
+                settings.server = false;
             } else if ("server".equalsIgnoreCase(str)) {
-                server = true;
+                settings.server = true;
             } else {
                 parseError("could not understand ntmode value '" + str + "'");
+                return false;
+            }
+        }
+
+        // processing rate cap (optional)
+        if (obj.has("max processing fps")) {
+            settings.maxProcessingFps = obj.get("max processing fps").getAsDouble();
+        }
+
+        // result topics (optional)
+        if (obj.has("results")) {
+            String str = obj.get("results").getAsString();
+            if ("topics".equalsIgnoreCase(str)) {
+                settings.resultOutput = NotePublisher.Output.TOPICS;
+            } else if ("packed".equalsIgnoreCase(str)) {
+                settings.resultOutput = NotePublisher.Output.PACKED;
+            } else if ("both".equalsIgnoreCase(str)) {
+                settings.resultOutput = NotePublisher.Output.BOTH;
+            } else {
+                parseError("could not understand results value '" + str + "'");
+                return false;
             }
         }
 
+        // frame deadline (optional)
+        if (obj.has("frame deadline")) {
+            settings.frameDeadline = obj.get("frame deadline").getAsDouble() / 1000.0;
+        }
+
+        // CPU budget (optional)
+        if (obj.has("cpu budget")) {
+            double budget = obj.get("cpu budget").getAsDouble();
+            if (budget <= 0 || budget > 1) {
+                parseError("cpu budget must be above 0 and at most 1");
+                return false;
+            }
+            settings.cpuBudget = budget;
+        }
+
+        // pose prediction rate (optional)
+        if (obj.has("prediction rate")) {
+            settings.predictionRate = obj.get("prediction rate").getAsDouble();
+        }
+
+        // match log (optional)
+        if (obj.has("match log")) {
+            settings.matchLogDir = obj.get("match log").getAsString();
+        }
+        if (obj.has("match log limit")) {
+            settings.matchLogLimit = obj.get("match log limit").getAsLong() << 20;
+        }
+
         // cameras
         JsonElement camerasElement = obj.get("cameras");
         if (camerasElement == null) {
@@ -241,7 +628,7 @@ public final class Main {
         }
         JsonArray cameras = camerasElement.getAsJsonArray();
         for (JsonElement camera : cameras) {
-            if (!readCameraConfig(camera.getAsJsonObject())) {
+            if (!readCameraConfig(camera.getAsJsonObject(), cameraConfigs)) {
                 return false;
             }
         }
@@ -249,7 +636,7 @@ public final class Main {
         if (obj.has("switched cameras")) {
             JsonArray switchedCameras = obj.get("switched cameras").getAsJsonArray();
             for (JsonElement camera : switchedCameras) {
-                if (!readSwitchedCameraConfig(camera.getAsJsonObject())) {
+                if (!readSwitchedCameraConfig(camera.getAsJsonObject(), switchedCameraConfigs)) {
                     return false;
                 }
             }
@@ -258,10 +645,46 @@ public final class Main {
         return true;
     }
 
+    /**
+     * Start every camera at once. Opening a USB camera and applying its
+     * settings takes a while and cameras do not depend on each other, so they
+     * are started on their own threads; the result keeps the config order.
+     */
+    public static List<VideoSource> startCameras(List<CameraConfig> configs) {
+        List<CompletableFuture<VideoSource>> starting = new ArrayList<>();
+        for (CameraConfig config : configs) {
+            starting.add(CompletableFuture.supplyAsync(() -> startCamera(config), runnable -> {
+                Thread thread = new Thread(runnable, "CameraStart-" + config.name);
+                thread.setDaemon(true);
+                thread.start();
+            }));
+        }
+
+        List<VideoSource> started = new ArrayList<>();
+        for (CompletableFuture<VideoSource> future : starting) {
+            try {
+                started.add(future.join());
+            } catch (CompletionException ex) {
+                if (ex.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ex.getCause();
+                }
+                throw ex;
+            }
+        }
+        return started;
+    }
+
     /**
      * Start running the camera.
      */
     public static VideoSource startCamera(CameraConfig config) {
+        if ("test".equalsIgnoreCase(config.source)) {
+            return startTestCamera(config);
+        }
+        if ("replay".equalsIgnoreCase(config.source)) {
+            return startReplayCamera(config);
+        }
+
         System.out.println("Starting camera '" + config.name + "' on " + config.path);
         UsbCamera camera = new UsbCamera(config.name, config.path);
         MjpegServer server = CameraServer.startAutomaticCapture(camera);
@@ -278,6 +701,321 @@ public final class Main {
         return camera;
     }
 
+    /**
+     * A camera's video mode frame rate, 30 if unspecified.
+     */
+    private static int cameraFps(CameraConfig config) {
+        return config.config.has("fps") ? config.config.get("fps").getAsInt() : 30;
+    }
+
+    /**
+     * Start a test pattern stand-in for a camera.
+     */
+    public static VideoSource startTestCamera(CameraConfig config) {
+        System.out.println("Starting test pattern camera '" + config.name + "'");
+        VideoSource camera = new TestPatternSource(config.name, config.width, config.height, cameraFps(config));
+        CameraServer.startAutomaticCapture(camera);
+        return camera;
+    }
+
+    /**
+     * Start a stand-in camera that plays back a recording. Detection uses the
+     * recording's resolution.
+     */
+    public static VideoSource startReplayCamera(CameraConfig config) {
+        System.out.println("Starting replay camera '" + config.name + "' from " + config.path
+                + (config.replayMaxSpeed ? " at max speed" : ""));
+        ReplaySource camera;
+        try {
+            camera = new ReplaySource(config.name, Paths.get(config.path), config.replayMaxSpeed, config.replayLoop);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("could not open recording '" + config.path + "'", ex);
+        }
+        config.width = camera.getWidth();
+        config.height = camera.getHeight();
+        if (config.processingFormat != PixelFormat.kBGR) {
+            System.err.println("camera '" + config.name + "': replay delivers BGR; processing as BGR");
+            config.processingFormat = PixelFormat.kBGR;
+        }
+        CameraServer.startAutomaticCapture(camera);
+        return camera;
+    }
+
+    /**
+     * Start recording a camera's grabbed frames to a new file in its record
+     * directory.
+     */
+    public static void startRecording(CameraConfig config, FrameGrabber grabber) {
+        String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        Path path = Paths.get(config.recordDir, config.name + "-" + stamp + ".frames");
+        try {
+            Files.createDirectories(path.getParent());
+            FrameRecorder recorder = new FrameRecorder(path, config.recordLimit, grabber.getPixelFormat());
+            grabber.setRecorder(recorder);
+            recorders.add(recorder);
+            System.out.println("Recording '" + config.name + "' to " + path);
+        } catch (IOException ex) {
+            System.err.println("could not record '" + config.name + "' to " + path + ": " + ex);
+        }
+    }
+
+    /**
+     * Build a camera's detection parameters, reusing the kernel and lookup table
+     * from the previous set where they still match.
+     */
+    public static DetectionParams detectionParams(CameraConfig config, DetectionParams previous) {
+        return new DetectionParams(config.lowerHsv, config.upperHsv, config.minArea, config.kernelSize,
+                config.fov, config.elevation, NOTE_RADIUS, config.useColorLut ? config.colorLutBits : 0,
+                config.calibration, previous);
+    }
+
+    /**
+     * Start writing the match log, and close it when the service is stopped so
+     * the last segment keeps every frame logged.
+     */
+    private static void startMatchLog(MatchLog log) {
+        try {
+            log.start();
+        } catch (IOException ex) {
+            System.err.println("could not start match log: " + ex);
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                log.close();
+            } catch (IOException ex) {
+                System.err.println("could not close match log: " + ex);
+            }
+        }, "MatchLogShutdown"));
+    }
+
+    /**
+     * Start note detection for a camera on its own thread, with its own overlay
+     * stream and NetworkTables subtable. Call after every camera and switched
+     * camera has its server, since the overlay takes the next free port.
+     *
+     * @param source the camera's grabber, or its fan-out branch
+     * @param format pixel format of the source's frames
+     */
+    public static Thread startNoteDetection(CameraConfig config, FrameSource source, PixelFormat format) {
+        System.out.println("Starting note detection on '" + config.name + "'");
+        int overlayWidth = config.overlayWidth > 0 ? config.overlayWidth : config.width;
+        int overlayHeight = config.overlayHeight > 0 ? config.overlayHeight : config.height;
+        CvSource overlayOutput = new CvSource("ProcessedVideo-" + config.name, PixelFormat.kMJPEG,
+                overlayWidth, overlayHeight, config.overlayFps > 0 ? (int) Math.ceil(config.overlayFps) : 30);
+        // Ports come from CameraServer's own counter, so overlays never collide
+        // with camera or switched camera streams
+        CameraServer.startAutomaticCapture(overlayOutput);
+        OverlayStage overlay = new OverlayStage(overlayOutput, config.overlayFps, overlayWidth, overlayHeight);
+
+        NoteDetector detector = new NoteDetector(overlay, config.fov, NOTE_RADIUS, config.elevation);
+        if (config.processingScales.length > 1 || config.processingScales[0] != 1.0) {
+            detector.setScaleController(new ScaleController(config.name, table.getSubTable(config.name),
+                    config.processingScales, config.latencyTarget));
+        }
+        if (config.presenceCoverage > 0) {
+            detector.setPresenceGate(new PresenceGate(table.getSubTable(config.name), config.presenceCoverage,
+                    config.presenceStep));
+        }
+        detector.setTracking(config.trackingRefresh, config.trackingMargin);
+        detector.setMultiNote(config.maxNotes);
+        detector.setSegmentationThreads(config.segmentationThreads, "Segment-" + config.name);
+        detector.setInputFormat(format);
+        detector.setParams(detectionParams(config, null));
+        tuners.add(new DetectionTuner(config.name, table.getSubTable(config.name).getSubTable("tuning"), detector));
+        PipelineDiagnostics diagnostics = new PipelineDiagnostics(diagnosticsTable.getSubTable(config.name));
+        detector.setDiagnostics(diagnostics);
+        NoteTracker tracker = new NoteTracker(config.filterAlpha, config.filterBeta, config.dropoutTimeout);
+        if (predictor != null) {
+            predictor.add(tracker, table.getSubTable(config.name));
+        }
+        NotePublisher publisher = new NotePublisher(table.getSubTable(config.name), tracker, global.resultOutput,
+                config.maxNotes > 0, cameraFps(config));
+        String firstFrame = config.name + "/FirstFrame";
+        String firstPose = config.name + "/FirstPose";
+        PipelineRunner<NoteDetector> runner = new PipelineRunner<>(source, detector, (pipeline, frame) -> {
+            publisher.copyPipelineOutputs(pipeline, frame);
+            if (!startup.hasReached(firstPose)) {
+                startup.reach(firstFrame);
+                if (pipeline.hasNote()) {
+                    startup.reach(firstPose);
+                }
+            }
+        });
+        runner.setMaxFps(global.maxProcessingFps);
+        runner.setDeadline(global.frameDeadline);
+        runner.setCpuBudget(global.cpuBudget);
+        runner.setDiagnostics(diagnostics);
+        if (matchLog != null) {
+            runner.setFrameLog(matchLog.addCamera(config.name, diagnostics, config.maxNotes > 0));
+        }
+        runners.add(runner);
+
+        Thread thread = new Thread(() -> {
+            if (config.core >= 0) {
+                ThreadAffinity.pinCurrentThread(config.core);
+            }
+
+            // Warm up while the camera is still opening
+            long start = System.nanoTime();
+            Mat warmUp = warmUpFrame(format, config.width, config.height);
+            if (!detector.warmUp(warmUp, WARMUP_FRAMES)) {
+                System.err.println("warning: '" + config.name
+                        + "' warm-up frame found no note; the first detection will run cold");
+            }
+            warmUp.release();
+            startup.record(config.name + "/WarmUp", (System.nanoTime() - start) / 1e6);
+
+            runner.runForever();
+        }, "NoteDetector-" + config.name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Start AprilTag detection for a camera on its own thread, publishing to
+     * the camera's apriltag subtable with its own rate cap and diagnostics.
+     *
+     * @param source grayscale fan-out branch of the camera's grabber
+     */
+    public static Thread startAprilTagDetection(CameraConfig config, FrameSource source) {
+        System.out.println("Starting " + config.aprilTagFamily + " AprilTag detection on '" + config.name + "'");
+        AprilTagPipeline pipeline = new AprilTagPipeline(config.aprilTagFamily, config.aprilTagSize,
+                (float) config.aprilTagDecimate, config.aprilTagThreads, config.calibration, config.fov);
+        PipelineRunner<AprilTagPipeline> runner = new PipelineRunner<>(source, pipeline,
+                new AprilTagPublisher(table.getSubTable(config.name).getSubTable("apriltag"), cameraFps(config)));
+        runner.setMaxFps(config.aprilTagFps);
+        runner.setDeadline(global.frameDeadline);
+        runner.setDiagnostics(new PipelineDiagnostics(
+                diagnosticsTable.getSubTable(config.name).getSubTable("apriltag")));
+        aprilTagRunners.add(runner);
+
+        Thread thread = new Thread(runner::runForever, "AprilTags-" + config.name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Build a synthetic frame in a grabber's pixel format with a note in view.
+     */
+    private static Mat warmUpFrame(PixelFormat format, int width, int height) {
+        if (format == PixelFormat.kYUYV) {
+            // Dark grey Y0 U Y1 V macropixels with an orange block
+            Mat frame = new Mat(height, width / 2, CvType.CV_8UC4, new Scalar(40, 128, 40, 128));
+            Mat note = frame.submat(height / 2, height * 3 / 4, width / 8, width * 3 / 16);
+            note.setTo(new Scalar(150, 80, 150, 200));
+            note.release();
+            return frame;
+        }
+        Mat frame = new Mat(height, width, CvType.CV_8UC3);
+        TestPatternSource.render(frame, 0.5);
+        return frame;
+    }
+
+    /**
+     * Re-read the configuration file and apply what can change while running:
+     * detection parameters, camera properties, stream settings and the
+     * processing rate cap. Anything else is reported as needing a restart.
+     */
+    public static synchronized void reloadConfig() {
+        // Parse and validate the whole file before touching anything; keys
+        // that were removed come back as their defaults
+        GlobalConfig newGlobal = new GlobalConfig();
+        List<CameraConfig> newConfigs = new ArrayList<>();
+        List<SwitchedCameraConfig> newSwitched = new ArrayList<>();
+        if (!readConfig(newGlobal, newConfigs, newSwitched)) {
+            System.err.println("keeping the running configuration");
+            return;
+        }
+        System.out.println("Reloading '" + configFile + "'");
+
+        List<String> restart = new ArrayList<>();
+        if (newGlobal.team != global.team) {
+            restart.add("team");
+        }
+        if (newGlobal.server != global.server) {
+            restart.add("ntmode");
+        }
+        if (newGlobal.resultOutput != global.resultOutput) {
+            restart.add("results");
+        }
+        if (newGlobal.predictionRate != global.predictionRate) {
+            restart.add("prediction rate");
+        }
+        if (!Objects.equals(newGlobal.matchLogDir, global.matchLogDir)) {
+            restart.add("match log");
+        }
+        if (newGlobal.matchLogLimit != global.matchLogLimit) {
+            restart.add("match log limit");
+        }
+        if (!restart.isEmpty()) {
+            System.out.println(restart + " changed; requires restart");
+        }
+
+        global.maxProcessingFps = newGlobal.maxProcessingFps;
+        global.frameDeadline = newGlobal.frameDeadline;
+        global.cpuBudget = newGlobal.cpuBudget;
+        for (PipelineRunner<NoteDetector> runner : runners) {
+            runner.setMaxFps(global.maxProcessingFps);
+            runner.setDeadline(global.frameDeadline);
+            runner.setCpuBudget(global.cpuBudget);
+        }
+        for (PipelineRunner<AprilTagPipeline> runner : aprilTagRunners) {
+            runner.setDeadline(global.frameDeadline);
+        }
+
+        Gson gson = new GsonBuilder().create();
+        for (CameraConfig config : newConfigs) {
+            int index = -1;
+            for (int i = 0; i < cameraConfigs.size(); i++) {
+                if (cameraConfigs.get(i).name.equals(config.name)) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                System.out.println("camera '" + config.name + "' added; requires restart");
+                continue;
+            }
+            CameraConfig running = cameraConfigs.get(index);
+
+            Set<String> changed = new HashSet<>(running.config.keySet());
+            changed.addAll(config.config.keySet());
+            changed.removeIf(key -> LIVE_KEYS.contains(key)
+                    || String.valueOf(running.config.get(key)).equals(String.valueOf(config.config.get(key))));
+            if (!changed.isEmpty()) {
+                System.out.println("camera '" + config.name + "': " + changed + " changed; requires restart");
+            }
+
+            // camera properties and stream settings
+            VideoSource camera = cameras.get(index);
+            if (camera instanceof UsbCamera) {
+                camera.setConfigJson(gson.toJson(config.config));
+            }
+            VideoSink server = CameraServer.getServer("serve_" + config.name);
+            if (config.streamConfig != null && server != null) {
+                server.setConfigJson(gson.toJson(config.streamConfig));
+            }
+
+            // detection parameters; the processed resolution cannot change live
+            running.lowerHsv = config.lowerHsv;
+            running.upperHsv = config.upperHsv;
+            running.minArea = config.minArea;
+            running.kernelSize = config.kernelSize;
+            running.fov = config.fov;
+            running.elevation = config.elevation;
+            running.calibration = config.calibration;
+            running.useColorLut = config.useColorLut && running.processingFormat == PixelFormat.kBGR;
+            running.colorLutBits = config.colorLutBits;
+            running.config = config.config;
+            running.streamConfig = config.streamConfig;
+            DetectionTuner tuner = tuners.get(index);
+            tuner.apply(detectionParams(running, tuner.getParams()));
+        }
+    }
+
     /**
      * Start running the switched camera.
      */
@@ -316,322 +1054,131 @@ public final class Main {
         return server;
     }
 
-    public static double detectOrangePercentage(VideoSource camera) {
-        // Create a CvSink to grab frames from the camera
-        CvSink cvSink = new CvSink("cvSink");
-        cvSink.setSource(camera);
-
-        // Create a Mat to hold the image
-        Mat image = new Mat();
-
-        // Grab a frame from the camera
-        if (cvSink.grabFrame(image) == 0) {
-            System.out.println("Empty Image!");
-            cvSink.close();
-            return 0.0;
-        }
-
-        // Convert image to HSV color space
-        Mat hsvImage = new Mat();
-        Imgproc.cvtColor(image, hsvImage, Imgproc.COLOR_BGR2HSV);
-
-        // Define lower and upper bounds for orange color in HSV
-        Scalar lowerOrange = new Scalar(5, 100, 100); // Lower bound (orange)
-        Scalar upperOrange = new Scalar(15, 255, 255); // Upper bound (orange)
-
-        // Threshold the HSV image to get only orange pixels
-        Mat orangeMask = new Mat();
-        Core.inRange(hsvImage, lowerOrange, upperOrange, orangeMask);
-
-        // Count the number of orange pixels
-        int orangePixelCount = Core.countNonZero(orangeMask);
-
-        // Calculate the percentage of orange pixels
-        double totalPixels = image.rows() * image.cols();
-        double orangePercentage = (orangePixelCount / totalPixels) * 100.0;
-
-        cvSink.close();
-
-        return orangePercentage;
-    }
-
-    // PROCESSING
-
-    public static double[] locateNote(VideoSource camera, int width, int height,
-            double fov, double ringRadius, double camElevation) {
-        // Create a CvSink to grab frames from the camera
-        CvSink cvSink = new CvSink("cvSink");
-        cvSink.setSource(camera);
-
-        // Create a Mat to hold the image
-        Mat image = new Mat();
-
-        // Grab a frame from the camera
-        if (cvSink.grabFrame(image) == 0) {
-            System.out.println("Empty Image!");
-            cvSink.close();
-            return new double[] { 0.0, 0.0 };
-        }
-
-        // Convert image to HSV color space
-        Mat hsvImage = new Mat();
-        Imgproc.cvtColor(image, hsvImage, Imgproc.COLOR_BGR2HSV);
-
-        // Define the range for orange color in HSV
-        Scalar lowerOrange = new Scalar(0, 100, 100);
-        Scalar upperOrange = new Scalar(20, 255, 255);
-
-        // Create a binary mask for the orange color
-        Mat mask = new Mat();
-        Core.inRange(hsvImage, lowerOrange, upperOrange, mask);
-
-        // Apply morphological operations to reduce noise
-        Mat morphedImage = new Mat();
-        Imgproc.erode(mask, morphedImage, Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(5, 5)));
-        Imgproc.dilate(morphedImage, morphedImage, Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(5, 5)));
-
-        // Find contours in the binary mask
-        List<MatOfPoint> contours = new ArrayList<>();
-        Mat hierarchy = new Mat();
-        Imgproc.findContours(morphedImage, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
-
-        // Filter contours based on size (you can adjust the threshold)
-        List<MatOfPoint> filteredContours = contours.stream()
-                .filter(contour -> Imgproc.contourArea(contour) > 100)
-                .collect(Collectors.toList());
-
-        // Now iterate through the filtered contours to find leftmost and rightmost
-        // points
-        // Now iterate through the filtered contours to find leftmost and rightmost
-        // points
-        double leftmostX = Double.MAX_VALUE;
-        double rightmostX = Double.MIN_VALUE;
-
-        for (MatOfPoint contour : filteredContours) {
-            for (Point point : contour.toList()) {
-                double x = point.x;
-
-                if (x < leftmostX) {
-                    leftmostX = x;
-                }
-
-                if (x > rightmostX) {
-                    rightmostX = x;
-                }
-            }
-        }
-
-        // Refine contours based on the shape of the note
-        List<MatOfPoint> refinedContours = new ArrayList<>();
-
-        for (MatOfPoint contour : filteredContours) {
-            MatOfPoint2f approxCurve = new MatOfPoint2f();
-            MatOfPoint2f contour2f = new MatOfPoint2f(contour.toArray());
-
-            // Approximate the contour to a polygon
-            double epsilon = 0.02 * Imgproc.arcLength(contour2f, true);
-            Imgproc.approxPolyDP(contour2f, approxCurve, epsilon, true);
-
-            // Convert back to MatOfPoint and add to refinedContours if it has 4 vertices
-            // (rectangle-like shape)
-            MatOfPoint approxMat = new MatOfPoint(approxCurve.toArray());
-            if (approxCurve.rows() == 4) {
-                refinedContours.add(approxMat);
-            }
-        }
-
-        // Now iterate through the refined contours to find leftmost and rightmost
-        // points
-        // and calculate the center
-        double refinedCenterX = 0.0;
-        double refinedLeftmostX = Double.MAX_VALUE;
-        double refinedRightmostX = Double.MIN_VALUE;
-        if (!refinedContours.isEmpty()) {
-
-            for (MatOfPoint contour : refinedContours) {
-                for (Point point : contour.toList()) {
-                    double x = point.x;
-
-                    if (x < refinedLeftmostX) {
-                        refinedLeftmostX = x;
-                    }
-
-                    if (x > refinedRightmostX) {
-                        refinedRightmostX = x;
-                    }
-                }
-            }
-
-            // Calculate the center based on the refined contour
-            refinedCenterX = (refinedLeftmostX + refinedRightmostX) / 2.0;
-        }
-
-        int leftX = (int) leftmostX;
-        int rightX = (int) rightmostX;
-
-        int centerOffset = (leftX - rightX) / 2;
-
-        final Mat rgb = new Mat();
-        Imgproc.cvtColor(morphedImage, rgb, Imgproc.COLOR_GRAY2BGR);
-
-        // Draw polygons on the image for visualization
-        Imgproc.drawContours(rgb, refinedContours, -1, new Scalar(0, 255, 0), 2);
-
-        Imgproc.line(rgb, new Point(leftX, 0), new Point(leftX, height), new Scalar(0, 0, 255), 1);
-        Imgproc.line(rgb, new Point(rightX, 0), new Point(rightX, height), new Scalar(0, 0, 255), 1);
-
-        Imgproc.line(rgb, new Point(0, (int) height / 2), new Point(width, (int) height / 2), new Scalar(255, 0, 0), 1);
-        Imgproc.line(rgb, new Point((int) width / 2, 0), new Point((int) width / 2, height), new Scalar(255, 0, 0), 1);
-
-        Imgproc.line(rgb, new Point(80 - centerOffset, 0), new Point(80 - centerOffset, height), new Scalar(0, 255, 0),
-                1);
-        Imgproc.line(rgb, new Point(80 + centerOffset, 0), new Point(80 + centerOffset, height), new Scalar(0, 255, 0),
-                1);
-
-        // Imgproc.line(rgb, new Point(0, 0), new Point(100, 100), new Scalar(0, 0,
-        // 255), 6);
-
-        // Calculate the center or use leftmostX and rightmostX for further processing
-        // double centerX = (leftmostX + rightmostX) / 2.0;
-
-        // Mat processedImage = new Mat();
-        // // Draw contours on the processed image for visualization
-        // Imgproc.drawContours(processedImage, filteredContours, -1, new Scalar(0, 255,
-        // 0), 2);
-
-        // // Optional: Show the processed image (you might need to adjust window name)
-        // // HighGui.imshow("Processed Image", processedImage);
-        // // HighGui.waitKey(0);
-
-        // // Put the processed image on CameraServer
-
-        // if (!processedImage.empty()) {
-        // outputStream.putFrame(processedImage);
-        // }
-
-        // return (centerX <= width) ? centerX : 0;
-
-        outputStream.putFrame(rgb);
-
-        cvSink.close();
-
-        final double internalAngleOffset = ((((refinedLeftmostX + refinedRightmostX) / 2) - refinedLeftmostX) * 2 * fov)
-                / width;
-        final double hypDistance = ringRadius / Math.tan(internalAngleOffset);
-
-        if (hypDistance <= camElevation) {
-            return new double[] { 0.0, 0.0 };
-        }
-
-        final double nD = Math.sqrt(Math.pow(hypDistance, 2) - Math.pow(camElevation, 2));
-        final double nTheta = (fov / width) * ((refinedLeftmostX + refinedRightmostX - width) / 2);
-
-        if (nTheta > 2) {
-            return new double[] { 0.0, 0.0 };
-        }
-
-        image.release();
-        hsvImage.release();
-        mask.release();
-        morphedImage.release();
-        hierarchy.release();
-        rgb.release();
-        cvSink.close();
-
-        return new double[] { nD, nTheta };
-
-    }
-
-    /**
-     * Example pipeline.
-     */
-    public static class MyPipeline implements VisionPipeline {
-        public int val;
-
-        @Override
-        public void process(Mat mat) {
-            val += 1;
-        }
-    }
-
     /**
      * Main.
      */
     public static void main(String... args) {
-
-        Timer timer = new Timer();
-
         // StringTopic stringTopic = new StringTopic(NetworkTableInstance.getDefault(),
         // team);
 
         // StringPublisher publisher = stringTopic.publish();
 
+        startup = new StartupPhases(table.getSubTable("startup"));
+
         if (args.length > 0) {
             configFile = args[0];
         }
 
         // read configuration
-        if (!readConfig()) {
+        if (!readConfig(global, cameraConfigs, switchedCameraConfigs)) {
             return;
         }
+        startup.endPhase("Config");
 
         // start NetworkTables
         NetworkTableInstance ntinst = NetworkTableInstance.getDefault();
-        if (server) {
+        if (global.server) {
             System.out.println("Setting up NetworkTables server");
             ntinst.startServer();
         } else {
-            System.out.println("Setting up NetworkTables client for team " + team);
+            System.out.println("Setting up NetworkTables client for team " + global.team);
             ntinst.startClient4("wpilibpi");
-            ntinst.setServerTeam(team);
+            ntinst.setServerTeam(global.team);
             ntinst.startDSClient();
         }
+        // connecting happens in the background while the cameras start
+        ntinst.addConnectionListener(true, event -> {
+            if (event.is(NetworkTableEvent.Kind.kConnected)) {
+                startup.reach("NetworkTablesConnected");
+            }
+        });
+        startup.endPhase("NetworkTables");
 
         // start cameras
-        for (CameraConfig config : cameraConfigs) {
-            cameras.add(startCamera(config));
+        cameras.addAll(startCameras(cameraConfigs));
+        startup.endPhase("Cameras");
+
+        // start one frame grabber per camera
+        for (int i = 0; i < cameras.size(); i++) {
+            CameraConfig config = cameraConfigs.get(i);
+            FrameGrabber grabber = config.processingFormat == PixelFormat.kBGR
+                    ? new FrameGrabber(config.name, cameras.get(i))
+                    : new RawFrameGrabber(config.name, cameras.get(i), config.processingFormat,
+                            config.width, config.height);
+            if (cameras.get(i) instanceof ReplaySource) {
+                ((ReplaySource) cameras.get(i)).setPacer(grabber);
+            }
+            if (config.recordDir != null) {
+                startRecording(config, grabber);
+            }
+            grabber.start();
+            grabbers.add(grabber);
+        }
+
+        // trim recordings to the frames written when the service is stopped
+        if (!recorders.isEmpty()) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                for (FrameRecorder recorder : recorders) {
+                    try {
+                        recorder.close();
+                    } catch (IOException ex) {
+                        System.err.println("could not close recording " + recorder.getPath() + ": " + ex);
+                    }
+                }
+            }, "RecorderShutdown"));
         }
 
+        startup.endPhase("Grabbers");
+
         // start switched cameras
         for (SwitchedCameraConfig config : switchedCameraConfigs) {
             startSwitchedCamera(config);
         }
 
-        // start image processing on camera 0 if present
-        if (cameras.size() >= 1) {
-            VisionThread visionThread = new VisionThread(cameras.get(0),
-                    new MyPipeline(), pipeline -> {
-                        // do something with pipeline results
-                    });
-            /*
-             * something like this for GRIP:
-             * VisionThread visionThread = new VisionThread(cameras.get(0),
-             * new GripPipeline(), pipeline -> {
-             * ...
-             * });
-             */
-            visionThread.start();
-        }
-
-        TimerTask postLoop = new TimerTask() {
-            @Override
-            public void run() {
-                colPub2.set(locateNote(cameras.get(0), 160, 120, 0.9564404, 0.1778, 0.257556));
+        // start note detection on every camera, each on its own thread; with
+        // several cameras, keep OpenCV from spawning workers that compete for cores
+        if (grabbers.size() > 1) {
+            Core.setNumThreads(1);
+        }
+        if (global.predictionRate > 0) {
+            predictor = new NotePredictor(global.predictionRate);
+        }
+        if (global.matchLogDir != null) {
+            try {
+                matchLog = new MatchLog(Paths.get(global.matchLogDir), global.matchLogLimit);
+            } catch (IOException | IllegalArgumentException ex) {
+                System.err.println("could not log matches to '" + global.matchLogDir + "': " + ex);
             }
-        };
-
-        // loop forever
-        // for (;;) {
-        // try {
-        // colPub.set("Field2d");
-        // // publisher.set(postCameraPixelColor(cameras.get(0), "TopLeftPixelColor"));
-        // Thread.sleep(100); // Sleep for a bit to avoid flooding the NetworkTable
-        // } catch (InterruptedException ex) {
-        // return;
-        // }
-        // }
-
-        timer.scheduleAtFixedRate(postLoop, 0, 50);
+        }
+        for (int i = 0; i < grabbers.size(); i++) {
+            CameraConfig config = cameraConfigs.get(i);
+            FrameGrabber grabber = grabbers.get(i);
+            if (config.aprilTagFamily == null) {
+                startNoteDetection(config, grabber, grabber.getPixelFormat());
+                continue;
+            }
+            // Grab and convert once, then run both pipelines side by side
+            FrameFanOut fanOut = new FrameFanOut(grabber);
+            FrameSource notes = fanOut.addBranch(FrameFanOut.Input.FRAME);
+            FrameSource tags = fanOut.addBranch(FrameFanOut.Input.GRAY);
+            fanOut.start();
+            startNoteDetection(config, notes, grabber.getPixelFormat());
+            startAprilTagDetection(config, tags);
+        }
+        if (predictor != null) {
+            predictor.start();
+        }
+        if (matchLog != null) {
+            startMatchLog(matchLog);
+        }
+        startup.endPhase("Detection");
+
+        // apply config file edits without restarting
+        try {
+            new ConfigWatcher(Paths.get(configFile), Main::reloadConfig);
+        } catch (IOException ex) {
+            System.err.println("could not watch '" + configFile + "': " + ex);
+        }
 
         // Keep the main method running indefinitely
         for (;;) {
@@ -0,0 +1,380 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import edu.wpi.first.util.WPIUtilJNI;
+
+/**
+ * Binary per-frame log of every camera's results and stage timings, written
+ * to rotating segment files so a match can be reviewed afterwards.
+ *
+ * <p>
+ * Each camera's detection thread fills fixed-size records into its own
+ * preallocated ring through a {@link CameraLog}; when the ring is full the
+ * record is dropped and counted, so logging never blocks or allocates on the
+ * hot path. One background thread drains the rings into memory-mapped segment
+ * files and rotates to a new segment when one fills. Old segments, including
+ * those from earlier runs, are deleted to keep the directory within its disk
+ * budget. Decode segments with {@link MatchLogDecoder}.
+ *
+ * <p>
+ * Segment layout, little-endian: a header with magic "MLOG", version, record
+ * size, record count, the wall clock and WPIUtil clock when the segment was
+ * opened, and the camera names by id; then the records. A segment cut off by
+ * a power loss keeps every record counted in its header.
+ */
+public final class MatchLog implements AutoCloseable {
+    static final int MAGIC = 0x474f4c4d; // "MLOG"
+    /* Records hold every stage, so a new stage is a new version */
+    static final int VERSION = 3;
+    static final String SUFFIX = ".mlog";
+
+    /* Header fields */
+    static final int HEADER_SIZE = 512;
+    static final int COUNT_OFFSET = 8;
+    static final int WALL_TIME_OFFSET = 16;
+    static final int CLOCK_OFFSET = 24;
+    static final int CAMERA_COUNT_OFFSET = 32;
+    static final int NAMES_OFFSET = 64;
+    static final int NAME_SIZE = 32;
+    static final int MAX_CAMERAS = 8;
+
+    /* Record fields */
+    static final int RECORD_SIZE = 128;
+    static final int TYPE_FRAME = 1;
+    static final int FLAG_HAS_NOTE = 1;
+    static final int FLAG_MULTI = 2;
+    static final int FLAG_GATED = 4;
+    static final int CAMERA = 1;
+    static final int FLAGS = 2;
+    static final int NOTE_COUNT = 3;
+    static final int SEQUENCE = 4;
+    static final int CAPTURE_TIME = 8;
+    static final int LOG_TIME = 16;
+    /* Stage times in microseconds as f32, in PipelineDiagnostics order */
+    static final int STAGES = 24;
+    static final int POSE = STAGES + 4 * PipelineDiagnostics.STAGE_COUNT;
+    static final int NOTES = POSE + 8;
+    static final int MAX_NOTES = 4;
+    static final int SCALE = NOTES + 12 * MAX_NOTES;
+
+    private static final long SEGMENT_BYTES = 16L << 20;
+
+    /* Records each camera can queue while the writer catches up */
+    private static final int RING_RECORDS = 1024;
+
+    /* Space left free on the disk however large the budget */
+    private static final long DISK_RESERVE = 64L << 20;
+
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final long FORCE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * One camera's ring of pending records. Use it as the runner's frame log;
+     * it is filled only from that camera's detection thread.
+     */
+    public static final class CameraLog implements PipelineRunner.Listener<NoteDetector> {
+        private final int id;
+        private final PipelineDiagnostics diagnostics;
+        private final boolean multiNote;
+        private final byte[] ring = new byte[RING_RECORDS * RECORD_SIZE];
+        private final ByteBuffer records = ByteBuffer.wrap(ring).order(ByteOrder.LITTLE_ENDIAN);
+        /* Next record to fill, written by the detection thread */
+        private final AtomicLong head = new AtomicLong();
+        /* Next record to write out, written by the writer thread */
+        private final AtomicLong tail = new AtomicLong();
+        private volatile long dropped;
+
+        CameraLog(int id, PipelineDiagnostics diagnostics, boolean multiNote) {
+            this.id = id;
+            this.diagnostics = diagnostics;
+            this.multiNote = multiNote;
+        }
+
+        @Override
+        public void copyPipelineOutputs(NoteDetector pipeline, FrameGrabber.Frame frame) {
+            long slot = head.get();
+            if (slot - tail.get() >= RING_RECORDS) {
+                dropped++;
+                return;
+            }
+            int o = (int) (slot % RING_RECORDS) * RECORD_SIZE;
+            double[] notes = pipeline.getNotes();
+            int count = notes.length / 3;
+
+            records.put(o, (byte) TYPE_FRAME);
+            records.put(o + CAMERA, (byte) id);
+            records.put(o + FLAGS, (byte) ((pipeline.hasNote() ? FLAG_HAS_NOTE : 0) | (multiNote ? FLAG_MULTI : 0)
+                    | (pipeline.wasGated() ? FLAG_GATED : 0)));
+            records.put(o + NOTE_COUNT, (byte) Math.min(count, 255));
+            records.putInt(o + SEQUENCE, (int) frame.sequence);
+            records.putLong(o + CAPTURE_TIME, frame.captureTime);
+            records.putLong(o + LOG_TIME, WPIUtilJNI.now());
+            for (int s = 0; s < PipelineDiagnostics.STAGE_COUNT; s++) {
+                float micros = diagnostics != null ? diagnostics.getFrameNanos(s) / 1000f : 0f;
+                records.putFloat(o + STAGES + 4 * s, micros);
+            }
+            double[] pose = pipeline.getNotePose();
+            records.putFloat(o + POSE, (float) pose[0]);
+            records.putFloat(o + POSE + 4, (float) pose[1]);
+            for (int i = 0; i < MAX_NOTES; i++) {
+                int n = o + NOTES + 12 * i;
+                boolean present = i < count;
+                records.putFloat(n, present ? (float) notes[i * 3] : 0f);
+                records.putFloat(n + 4, present ? (float) notes[i * 3 + 1] : 0f);
+                records.putFloat(n + 8, present ? (float) notes[i * 3 + 2] : 0f);
+            }
+            records.putFloat(o + SCALE, (float) pipeline.getScale());
+
+            head.lazySet(slot + 1);
+        }
+
+        /** Records dropped because the ring was full. */
+        public long getDropped() {
+            return dropped;
+        }
+    }
+
+    private final Path directory;
+    private final long budget;
+    private final String prefix;
+    private final List<CameraLog> cameras = new CopyOnWriteArrayList<>();
+    private final List<String> names = new ArrayList<>();
+
+    /* Segment files on disk, oldest first, including the one being written */
+    private final Deque<Path> segments = new ArrayDeque<>();
+
+    /* Writer thread state */
+    private final Thread thread;
+    private volatile boolean running = true;
+    private int segmentIndex;
+    private Path path;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int position;
+    private long count;
+    private long lastForce;
+
+    /**
+     * Create a log writing to a directory. Add cameras, then call start().
+     *
+     * @param directory   directory for segment files, created if missing
+     * @param budgetBytes most space all segments in the directory may use
+     */
+    public MatchLog(Path directory, long budgetBytes) throws IOException {
+        if (budgetBytes < 2 * SEGMENT_BYTES) {
+            throw new IllegalArgumentException("match log budget must be at least " + (2 * SEGMENT_BYTES >> 20)
+                    + " MB");
+        }
+        this.directory = directory;
+        budget = budgetBytes;
+        prefix = "match-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        Files.createDirectories(directory);
+
+        // Earlier runs' segments count against the budget, oldest first
+        List<Path> existing = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                existing.add(file);
+            }
+        }
+        existing.sort(Comparator.comparing(MatchLog::lastModified).thenComparing(Comparator.naturalOrder()));
+        segments.addAll(existing);
+
+        thread = new Thread(this::run, "MatchLog");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Register a camera and get the log its runner should write to.
+     *
+     * @param diagnostics the camera's stage timing, or null to log no timings
+     */
+    public CameraLog addCamera(String name, PipelineDiagnostics diagnostics, boolean multiNote) {
+        if (cameras.size() == MAX_CAMERAS) {
+            throw new IllegalStateException("match log supports at most " + MAX_CAMERAS + " cameras");
+        }
+        CameraLog log = new CameraLog(cameras.size(), diagnostics, multiNote);
+        names.add(name);
+        cameras.add(log);
+        return log;
+    }
+
+    /**
+     * Open the first segment and start the writer thread.
+     */
+    public void start() throws IOException {
+        openSegment();
+        thread.start();
+        System.out.println("Logging matches to " + directory + " within " + (budget >> 20) + " MB");
+    }
+
+    private void run() {
+        while (running) {
+            boolean wrote = drain();
+            long now = System.nanoTime();
+            if (buffer != null && now - lastForce >= FORCE_NANOS) {
+                buffer.force();
+                lastForce = now;
+            }
+            if (!wrote) {
+                LockSupport.parkNanos(IDLE_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Copy every pending record into the current segment.
+     *
+     * @return whether anything was written
+     */
+    private boolean drain() {
+        boolean wrote = false;
+        for (CameraLog camera : cameras) {
+            long tail = camera.tail.get();
+            long head = camera.head.get();
+            while (tail < head && buffer != null) {
+                if (position + RECORD_SIZE > buffer.capacity()) {
+                    rotate();
+                    continue;
+                }
+                int o = (int) (tail % RING_RECORDS) * RECORD_SIZE;
+                buffer.put(position, camera.ring, o, RECORD_SIZE);
+                position += RECORD_SIZE;
+                count++;
+                tail++;
+                camera.tail.lazySet(tail);
+                wrote = true;
+            }
+        }
+        if (wrote && buffer != null) {
+            buffer.putLong(COUNT_OFFSET, count);
+        }
+        return wrote;
+    }
+
+    private void rotate() {
+        try {
+            closeSegment();
+            openSegment();
+        } catch (IOException ex) {
+            System.err.println("match log stopped: " + ex);
+            buffer = null;
+        }
+    }
+
+    private void openSegment() throws IOException {
+        // Make room for the new segment by deleting the oldest ones
+        long used = 0;
+        for (Path segment : segments) {
+            used += size(segment);
+        }
+        while (!segments.isEmpty() && used + SEGMENT_BYTES > budget) {
+            Path oldest = segments.removeFirst();
+            used -= size(oldest);
+            Files.deleteIfExists(oldest);
+        }
+
+        path = directory.resolve(String.format("%s-%03d%s", prefix, segmentIndex++, SUFFIX));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            // As in FrameRecorder, never map more than is free on the disk
+            long free = Files.getFileStore(path).getUsableSpace() - DISK_RESERVE;
+            long size = Math.min(SEGMENT_BYTES, free);
+            if (size < HEADER_SIZE + RECORD_SIZE) {
+                throw new IOException("not enough disk space for " + path);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException ex) {
+            channel.close();
+            Files.deleteIfExists(path);
+            throw ex;
+        }
+        segments.addLast(path);
+
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, MAGIC);
+        buffer.putShort(4, (short) VERSION);
+        buffer.putShort(6, (short) RECORD_SIZE);
+        buffer.putLong(COUNT_OFFSET, 0);
+        buffer.putLong(WALL_TIME_OFFSET, System.currentTimeMillis());
+        buffer.putLong(CLOCK_OFFSET, WPIUtilJNI.now());
+        buffer.putShort(CAMERA_COUNT_OFFSET, (short) names.size());
+        for (int i = 0; i < names.size(); i++) {
+            byte[] name = names.get(i).getBytes(StandardCharsets.UTF_8);
+            buffer.put(NAMES_OFFSET + i * NAME_SIZE, name, 0, Math.min(name.length, NAME_SIZE));
+        }
+        position = HEADER_SIZE;
+        count = 0;
+    }
+
+    private void closeSegment() throws IOException {
+        buffer.putLong(COUNT_OFFSET, count);
+        buffer.force();
+        channel.truncate(position);
+        channel.close();
+        buffer = null;
+    }
+
+    /**
+     * Stop the writer, write out what is queued and trim the last segment.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (buffer != null) {
+            drain();
+            closeSegment();
+        }
+        for (int i = 0; i < cameras.size(); i++) {
+            if (cameras.get(i).getDropped() > 0) {
+                System.out.println("match log dropped " + cameras.get(i).getDropped() + " records from '"
+                        + names.get(i) + "'");
+            }
+        }
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException ex) {
+            return 0;
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException ex) {
+            return 0;
+        }
+    }
+}
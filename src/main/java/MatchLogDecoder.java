@@ -0,0 +1,161 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Exports MatchLog segments to CSV, one row per frame.
+ *
+ * <p>
+ * Takes segment files or directories of them, in any order; segments are
+ * written oldest first. Wall clock times come from each segment's header, so
+ * they are only as good as the Pi's clock was when it was written.
+ *
+ * <pre>
+ * java -cp java-multiCameraServer-all.jar MatchLogDecoder [-o out.csv] &lt;segment or directory&gt;...
+ * </pre>
+ */
+public final class MatchLogDecoder {
+    private MatchLogDecoder() {
+    }
+
+    /**
+     * Main.
+     */
+    public static void main(String... args) throws IOException {
+        Path output = null;
+        List<Path> segments = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("-o".equals(args[i]) && i + 1 < args.length) {
+                output = Paths.get(args[++i]);
+            } else {
+                addSegments(Paths.get(args[i]), segments);
+            }
+        }
+        if (segments.isEmpty()) {
+            System.err.println("Usage: MatchLogDecoder [-o out.csv] <segment or directory>...");
+            System.exit(1);
+        }
+        segments.sort(null);
+
+        try (PrintWriter out = output != null
+                ? new PrintWriter(Files.newBufferedWriter(output, StandardCharsets.UTF_8))
+                : new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)))) {
+            writeHeader(out);
+            long rows = 0;
+            for (Path segment : segments) {
+                rows += decode(segment, out);
+            }
+            out.flush();
+            System.err.println("Exported " + rows + " frames from " + segments.size() + " segments");
+        }
+    }
+
+    private static void addSegments(Path path, List<Path> segments) throws IOException {
+        if (!Files.isDirectory(path)) {
+            segments.add(path);
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, "*" + MatchLog.SUFFIX)) {
+            for (Path file : stream) {
+                segments.add(file);
+            }
+        }
+    }
+
+    private static void writeHeader(PrintWriter out) {
+        out.print("segment,camera,sequence,wall_time,capture_us,log_us,has_note,multi,gated,note_count,"
+                + "distance,angle,scale");
+        for (int s = 0; s < PipelineDiagnostics.STAGE_COUNT; s++) {
+            out.print("," + PipelineDiagnostics.stageName(s).toLowerCase() + "_us");
+        }
+        for (int i = 1; i <= MatchLog.MAX_NOTES; i++) {
+            out.print(",note" + i + "_distance,note" + i + "_angle,note" + i + "_confidence");
+        }
+        out.println();
+    }
+
+    /**
+     * Write a segment's frames.
+     *
+     * @return frames written
+     */
+    private static long decode(Path segment, PrintWriter out) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(segment)).order(ByteOrder.LITTLE_ENDIAN);
+        if (data.capacity() < MatchLog.HEADER_SIZE || data.getInt(0) != MatchLog.MAGIC) {
+            System.err.println("skipping " + segment + ": not a match log");
+            return 0;
+        }
+        int version = data.getShort(4);
+        int recordSize = data.getShort(6);
+        if (version != MatchLog.VERSION || recordSize != MatchLog.RECORD_SIZE) {
+            System.err.println("skipping " + segment + ": version " + version + " is not supported");
+            return 0;
+        }
+
+        long count = data.getLong(MatchLog.COUNT_OFFSET);
+        long wallTime = data.getLong(MatchLog.WALL_TIME_OFFSET);
+        long clock = data.getLong(MatchLog.CLOCK_OFFSET);
+        String[] cameras = new String[data.getShort(MatchLog.CAMERA_COUNT_OFFSET)];
+        for (int i = 0; i < cameras.length; i++) {
+            int start = MatchLog.NAMES_OFFSET + i * MatchLog.NAME_SIZE;
+            int length = 0;
+            while (length < MatchLog.NAME_SIZE && data.get(start + length) != 0) {
+                length++;
+            }
+            cameras[i] = new String(data.array(), start, length, StandardCharsets.UTF_8);
+        }
+
+        // A segment cut off mid-write may hold fewer records than counted
+        long available = (data.capacity() - MatchLog.HEADER_SIZE) / MatchLog.RECORD_SIZE;
+        count = Math.min(count, available);
+        String name = segment.getFileName().toString();
+        long rows = 0;
+        for (long r = 0; r < count; r++) {
+            int o = (int) (MatchLog.HEADER_SIZE + r * MatchLog.RECORD_SIZE);
+            if (data.get(o) != MatchLog.TYPE_FRAME) {
+                continue;
+            }
+            int camera = data.get(o + MatchLog.CAMERA) & 0xff;
+            int flags = data.get(o + MatchLog.FLAGS) & 0xff;
+            long captureTime = data.getLong(o + MatchLog.CAPTURE_TIME);
+            StringBuilder row = new StringBuilder(256);
+            row.append(name).append(',')
+                    .append(camera < cameras.length ? cameras[camera] : Integer.toString(camera)).append(',')
+                    .append(data.getInt(o + MatchLog.SEQUENCE) & 0xffffffffL).append(',')
+                    .append(Instant.ofEpochMilli(wallTime + (captureTime - clock) / 1000)).append(',')
+                    .append(captureTime).append(',')
+                    .append(data.getLong(o + MatchLog.LOG_TIME)).append(',')
+                    .append((flags & MatchLog.FLAG_HAS_NOTE) != 0 ? 1 : 0).append(',')
+                    .append((flags & MatchLog.FLAG_MULTI) != 0 ? 1 : 0).append(',')
+                    .append((flags & MatchLog.FLAG_GATED) != 0 ? 1 : 0).append(',')
+                    .append(data.get(o + MatchLog.NOTE_COUNT) & 0xff).append(',')
+                    .append(data.getFloat(o + MatchLog.POSE)).append(',')
+                    .append(data.getFloat(o + MatchLog.POSE + 4)).append(',')
+                    .append(data.getFloat(o + MatchLog.SCALE));
+            for (int s = 0; s < PipelineDiagnostics.STAGE_COUNT; s++) {
+                row.append(',').append(data.getFloat(o + MatchLog.STAGES + 4 * s));
+            }
+            for (int i = 0; i < MatchLog.MAX_NOTES * 3; i++) {
+                row.append(',').append(data.getFloat(o + MatchLog.NOTES + 4 * i));
+            }
+            out.println(row);
+            rows++;
+        }
+        return rows;
+    }
+}
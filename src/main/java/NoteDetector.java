@@ -0,0 +1,796 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import edu.wpi.first.cscore.VideoMode.PixelFormat;
+import edu.wpi.first.vision.VisionPipeline;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Note detection pipeline. Finds the orange note in each frame and keeps the
+ * result as { distance, angle }, or { 0, 0 } when there is no valid note.
+ *
+ * <p>
+ * With tracking enabled, once a note is found the following frames only
+ * process a window around the last detection, widened by how far the note
+ * moved between the last two detections. The whole frame is searched again
+ * when the note is lost or every few frames as a refresh.
+ *
+ * <p>
+ * In multi-note mode the mask is labelled with connected-component statistics
+ * instead of contours, and every component that passes the size and geometry
+ * checks becomes a candidate. Candidates are kept nearest first as packed
+ * { distance, angle, confidence } triples; the nearest is also the single
+ * pose. Tracking does not apply in this mode.
+ *
+ * <p>
+ * With a presence gate, each frame is first thresholded on a sparse grid of
+ * pixels, and frames the gate judges empty skip the rest of the pipeline and
+ * report no note. Skipped frames leave the overlay stream on its last image.
+ */
+public class NoteDetector implements VisionPipeline {
+    /* Default HSV range for orange note detection */
+    static final Scalar LOWER_ORANGE = new Scalar(0, 100, 100);
+    static final Scalar UPPER_ORANGE = new Scalar(20, 255, 255);
+
+    /*
+     * Matching range for YUYV macropixels (Y0, U, Y1, V): orange is bright
+     * enough, low in U and high in V
+     */
+    static final Scalar LOWER_ORANGE_YUYV = new Scalar(30, 0, 30, 150);
+    static final Scalar UPPER_ORANGE_YUYV = new Scalar(255, 110, 255, 255);
+
+    private static final Scalar RED = new Scalar(0, 0, 255);
+    private static final Scalar GREEN = new Scalar(0, 255, 0);
+    private static final Scalar BLUE = new Scalar(255, 0, 0);
+    private static final Scalar YELLOW = new Scalar(0, 255, 255);
+
+    /* Fraction of its bounding box an elliptical blob fills */
+    private static final double ELLIPSE_FILL = Math.PI / 4;
+
+    private final OverlayStage overlay;
+
+    /* Parallel striped segmentation, or null to segment on the calling thread */
+    private StripeSegmenter segmenter;
+    private final StripeSegmenter.Stage stripeStage = this::segmentStripe;
+
+    /* Processing scale controller, or null to always process at full size */
+    private ScaleController scaler;
+
+    /* Orange presence gate, or null to run the full pipeline on every frame */
+    private PresenceGate gate;
+    private boolean gated;
+
+    /* Scale, size and smallest note area for the current frame */
+    private double scale = 1.0;
+    private int frameWidth;
+    private int frameHeight;
+    private double minArea;
+
+    /* Parameters set by any thread, and the set in use for the current frame */
+    private volatile DetectionParams params;
+    private DetectionParams active;
+
+    /* Overlay being filled for the current frame, or null when not wanted */
+    private OverlayStage.Frame overlayFrame;
+
+    /* Running on a synthetic frame; skip the overlay */
+    private boolean warmingUp;
+
+    private final double[] notePose = new double[2];
+    private boolean found;
+
+    /* Note candidates nearest first as { distance, angle, confidence } triples */
+    private int maxNotes;
+    private double[] notes = new double[3];
+    private int noteCount;
+
+    /* Exact-length copies of notes for publishing, indexed by count */
+    private double[][] packedNotes = { new double[0], new double[3] };
+
+    /* Input is YUYV macropixels from a RawFrameGrabber instead of BGR */
+    private boolean yuyv;
+
+    /* Stage timing, or null */
+    private PipelineDiagnostics diagnostics;
+
+    /* Processed region in the input Mat's own columns */
+    private final Rect inputRegion = new Rect();
+
+    /* Tracking settings; a refresh interval of 0 disables tracking */
+    private int trackRefresh;
+    private double trackMargin = 0.5;
+
+    /* Tracking state, in full-frame pixels */
+    private boolean tracking;
+    private int framesSinceSearch;
+    private final Rect region = new Rect();
+    private double trackLeft;
+    private double trackRight;
+    private double trackTop;
+    private double trackBottom;
+    private double trackCenterX;
+    private double trackCenterY;
+    private double trackVelocityX;
+    private double trackVelocityY;
+
+    /**
+     * Create a detector for a camera.
+     *
+     * @param overlay       stage the debug overlay is handed to, or null for
+     *                      no overlay
+     * @param fov           horizontal field of view in radians
+     * @param ringRadius    note radius in meters
+     * @param camElevation  camera height above the floor in meters
+     */
+    public NoteDetector(OverlayStage overlay, double fov, double ringRadius, double camElevation) {
+        this.overlay = overlay;
+        params = DetectionParams.defaults(fov, camElevation, ringRadius);
+    }
+
+    /**
+     * Enable region-of-interest tracking.
+     *
+     * @param refreshFrames frames between full-frame searches while tracking, or
+     *                      0 to always search the full frame
+     * @param margin        window padding on each side, as a fraction of the
+     *                      note's size
+     */
+    public void setTracking(int refreshFrames, double margin) {
+        trackRefresh = refreshFrames;
+        trackMargin = margin;
+        tracking = false;
+    }
+
+    /**
+     * Replace the detection parameters. Safe to call from any thread; the next
+     * frame uses the new set in full.
+     */
+    public void setParams(DetectionParams params) {
+        this.params = params;
+    }
+
+    public DetectionParams getParams() {
+        return params;
+    }
+
+    /**
+     * Set the pixel format of incoming frames, kBGR or kYUYV. YUYV frames are
+     * segmented directly in YUV space; the lookup table only applies to BGR.
+     */
+    public void setInputFormat(PixelFormat format) {
+        if (format != PixelFormat.kBGR && format != PixelFormat.kYUYV) {
+            throw new IllegalArgumentException("note detection needs BGR or YUYV frames, not " + format);
+        }
+        yuyv = format == PixelFormat.kYUYV;
+        tracking = false;
+    }
+
+    /**
+     * Switch to multi-note detection.
+     *
+     * @param maxNotes most candidates to keep, nearest first, or 0 for the
+     *                 single-target contour path
+     */
+    public void setMultiNote(int maxNotes) {
+        this.maxNotes = Math.max(0, maxNotes);
+        int capacity = Math.max(1, this.maxNotes);
+        notes = new double[capacity * 3];
+        packedNotes = new double[capacity + 1][];
+        for (int i = 0; i <= capacity; i++) {
+            packedNotes[i] = new double[i * 3];
+        }
+        noteCount = 0;
+        tracking = false;
+    }
+
+    /**
+     * Split thresholding and morphology across threads, one horizontal stripe
+     * each. Results are identical to the single-threaded path. One or fewer
+     * segments on the calling thread. Regions too short to split, such as
+     * tracking windows, are always segmented on the calling thread.
+     *
+     * @param name prefix for the worker thread names
+     */
+    public void setSegmentationThreads(int threads, String name) {
+        if (segmenter != null) {
+            segmenter.close();
+        }
+        segmenter = threads > 1 ? new StripeSegmenter(threads, name) : null;
+    }
+
+    /**
+     * Downsample frames before segmentation by the scale the controller picks,
+     * and report each frame's processing time to it. Null processes every
+     * frame at full size.
+     */
+    public void setScaleController(ScaleController scaler) {
+        this.scaler = scaler;
+    }
+
+    /**
+     * Check each frame for orange on a sparse grid before the full pipeline,
+     * and skip frames the gate judges empty. Null runs every frame in full.
+     */
+    public void setPresenceGate(PresenceGate gate) {
+        this.gate = gate;
+    }
+
+    /**
+     * Record per-stage timing into diagnostics. Null turns timing off.
+     */
+    public void setDiagnostics(PipelineDiagnostics diagnostics) {
+        this.diagnostics = diagnostics;
+    }
+
+    /**
+     * Run detection on a synthetic frame a few times so OpenCV's first-call
+     * setup, the thread's workspace Mats and the first JIT compiles are done
+     * before real frames arrive. Call on the thread that will run the detector.
+     * Nothing is drawn or timed, and results and tracking are cleared after.
+     *
+     * @return whether the last frame found a note, so the found path was warmed
+     *         up too
+     */
+    public boolean warmUp(Mat frame, int frames) {
+        PipelineDiagnostics timing = diagnostics;
+        PresenceGate presence = gate;
+        diagnostics = null;
+        gate = null;
+        warmingUp = true;
+        try {
+            for (int i = 0; i < frames; i++) {
+                if (presence != null) {
+                    active = params;
+                    sampleCoverage(frame, presence.getStep(), DetectionWorkspace.current());
+                }
+                process(frame);
+            }
+            return found;
+        } finally {
+            diagnostics = timing;
+            gate = presence;
+            if (gate != null) {
+                gate.reset();
+            }
+            warmingUp = false;
+            tracking = false;
+            found = false;
+            noteCount = 0;
+            notePose[0] = 0.0;
+            notePose[1] = 0.0;
+        }
+    }
+
+    /**
+     * Locate the note in a frame. Uses the calling thread's DetectionWorkspace,
+     * so steady-state calls allocate no Mats.
+     */
+    @Override
+    public void process(Mat image) {
+        long start = System.nanoTime();
+        notePose[0] = 0.0;
+        notePose[1] = 0.0;
+        noteCount = 0;
+        active = params;
+
+        // Frames with no orange on the sample grid stop here
+        DetectionWorkspace ws = DetectionWorkspace.current();
+        gated = gate != null && !gate.admit(sampleCoverage(image, gate.getStep(), ws), found);
+        if (gated) {
+            found = false;
+            tracking = false;
+            return;
+        }
+
+        // Tracking windows are in processed pixels, so a new scale starts over
+        double newScale = scaler != null ? scaler.getScale() : 1.0;
+        if (newScale != scale) {
+            scale = newScale;
+            tracking = false;
+        }
+        minArea = active.minArea * scale * scale;
+
+        if (scale < 1.0) {
+            // Area averaging keeps thin note edges; on YUYV it averages each
+            // macropixel component separately
+            long scaleStart = System.nanoTime();
+            ws.size.width = Math.max(1, Math.round(image.cols() * scale));
+            ws.size.height = Math.max(1, Math.round(image.rows() * scale));
+            Imgproc.resize(image, ws.scaled, ws.size, 0, 0, Imgproc.INTER_AREA);
+            image = ws.scaled;
+            mark(PipelineDiagnostics.SCALE, scaleStart);
+        }
+
+        // YUYV Mats hold two pixels per column
+        int cols = yuyv ? image.cols() * 2 : image.cols();
+        frameWidth = cols;
+        frameHeight = image.rows();
+        boolean useRegion = maxNotes == 0 && trackRefresh > 0 && tracking && framesSinceSearch < trackRefresh;
+        if (useRegion) {
+            framesSinceSearch++;
+            setTrackingRegion(cols, image.rows());
+        } else {
+            framesSinceSearch = 0;
+            region.x = 0;
+            region.y = 0;
+            region.width = cols;
+            region.height = image.rows();
+        }
+        inputRegion.x = yuyv ? region.x / 2 : region.x;
+        inputRegion.y = region.y;
+        inputRegion.width = yuyv ? region.width / 2 : region.width;
+        inputRegion.height = region.height;
+
+        try {
+            if (maxNotes > 0) {
+                found = locateNotes(image, ws);
+            } else {
+                found = locateNote(image, useRegion, ws, notePose);
+                if (found) {
+                    notes[0] = notePose[0];
+                    notes[1] = notePose[1];
+                    notes[2] = 1.0;
+                    noteCount = 1;
+                }
+            }
+        } finally {
+            ws.release();
+        }
+        tracking = found && maxNotes == 0;
+        if (scaler != null) {
+            scaler.record(System.nanoTime() - start);
+        }
+    }
+
+    private void setTrackingRegion(int cols, int rows) {
+        double padX = trackMargin * (trackRight - trackLeft) + Math.abs(trackVelocityX);
+        double padY = trackMargin * (trackBottom - trackTop) + Math.abs(trackVelocityY);
+        int left = Math.max(0, (int) (trackLeft + trackVelocityX - padX));
+        int right = Math.min(cols, (int) Math.ceil(trackRight + trackVelocityX + padX) + 1);
+        int top = Math.max(0, (int) (trackTop + trackVelocityY - padY));
+        int bottom = Math.min(rows, (int) Math.ceil(trackBottom + trackVelocityY + padY) + 1);
+        if (yuyv) {
+            // Keep the window on whole macropixels
+            left &= ~1;
+            right = Math.min(cols, (right + 1) & ~1);
+        }
+        region.x = left;
+        region.y = top;
+        region.width = Math.max(yuyv ? 2 : 1, right - left);
+        region.height = Math.max(1, bottom - top);
+    }
+
+    private void updateTrack(double left, double right, double top, double bottom) {
+        double centerX = (left + right) / 2;
+        double centerY = (top + bottom) / 2;
+        if (tracking) {
+            trackVelocityX = centerX - trackCenterX;
+            trackVelocityY = centerY - trackCenterY;
+        } else {
+            trackVelocityX = 0;
+            trackVelocityY = 0;
+        }
+        trackCenterX = centerX;
+        trackCenterY = centerY;
+        trackLeft = left;
+        trackRight = right;
+        trackTop = top;
+        trackBottom = bottom;
+    }
+
+    /**
+     * Fraction of a grid of pixels, every step pixels each way (macropixels
+     * for YUYV), that pass the current thresholds. Nearest-neighbour resizing
+     * reads only the sampled pixels.
+     */
+    private double sampleCoverage(Mat image, int step, DetectionWorkspace ws) {
+        long time = System.nanoTime();
+        ws.size.width = Math.max(1, image.cols() / step);
+        ws.size.height = Math.max(1, image.rows() / step);
+        Imgproc.resize(image, ws.sample, ws.size, 0, 0, Imgproc.INTER_NEAREST);
+        if (yuyv) {
+            Core.inRange(ws.sample, LOWER_ORANGE_YUYV, UPPER_ORANGE_YUYV, ws.sampleMask);
+        } else if (active.lut != null) {
+            active.lut.apply(ws.sample, ws.sampleMask, ws);
+        } else {
+            Imgproc.cvtColor(ws.sample, ws.sampleHsv, Imgproc.COLOR_BGR2HSV);
+            Core.inRange(ws.sampleHsv, active.lower, active.upper, ws.sampleMask);
+        }
+        double coverage = (double) Core.countNonZero(ws.sampleMask) / ws.sampleMask.total();
+        mark(PipelineDiagnostics.GATE, time);
+        return coverage;
+    }
+
+    /**
+     * Whether the presence gate skipped the last frame as empty.
+     */
+    public boolean wasGated() {
+        return gated;
+    }
+
+    /**
+     * Processing scale the last frame was segmented at.
+     */
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * Result of the last frame as { distance, angle }. The array is reused.
+     */
+    public double[] getNotePose() {
+        return notePose;
+    }
+
+    /**
+     * Whether the last frame contained a valid note.
+     */
+    public boolean hasNote() {
+        return found;
+    }
+
+    /**
+     * Note candidates in the last frame, nearest first, packed as { distance,
+     * angle, confidence } per note. In single-target mode this is the one
+     * note, with confidence 1, or empty. The array is reused for each count.
+     */
+    public double[] getNotes() {
+        double[] packed = packedNotes[noteCount];
+        System.arraycopy(notes, 0, packed, 0, packed.length);
+        return packed;
+    }
+
+    /**
+     * Threshold and clean up the processed region into ws.morphed.
+     *
+     * @return the time segmentation finished, for stage timing
+     */
+    private long segment(Mat image, boolean useRegion, DetectionWorkspace ws) {
+        Mat input = useRegion ? ws.view(image, inputRegion) : image;
+        if (segmenter != null && segmenter.covers(region.height)) {
+            // Erode then dilate reads kernelSize / 2 rows each way per pass
+            long time = System.nanoTime();
+            segmenter.run(input, ws.morphed, region.width, 2 * (active.kernelSize / 2), stripeStage);
+            return mark(PipelineDiagnostics.MORPHOLOGY, time);
+        }
+        return segmentRows(input, region.width, ws, true);
+    }
+
+    /**
+     * Threshold and clean up rows of the input into ws.morphed.
+     *
+     * @param outputWidth mask width in pixels
+     * @param timed       record stage times; only on the detection thread
+     * @return the time segmentation finished
+     */
+    private long segmentRows(Mat input, int outputWidth, DetectionWorkspace ws, boolean timed) {
+        long time = System.nanoTime();
+
+        // Create a binary mask for orange, in YUV space for YUYV input, otherwise
+        // in HSV color space or in one pass through the lookup table
+        if (yuyv) {
+            // One mask pixel per macropixel, then widen back to full resolution
+            Core.inRange(input, LOWER_ORANGE_YUYV, UPPER_ORANGE_YUYV, ws.hsv);
+            ws.size.width = outputWidth;
+            ws.size.height = input.rows();
+            Imgproc.resize(ws.hsv, ws.mask, ws.size, 0, 0, Imgproc.INTER_NEAREST);
+        } else if (active.lut != null) {
+            active.lut.apply(input, ws.mask, ws);
+        } else {
+            Imgproc.cvtColor(input, ws.hsv, Imgproc.COLOR_BGR2HSV);
+            if (timed) {
+                time = mark(PipelineDiagnostics.CONVERT, time);
+            }
+            Core.inRange(ws.hsv, active.lower, active.upper, ws.mask);
+        }
+        if (timed) {
+            time = mark(PipelineDiagnostics.THRESHOLD, time);
+        }
+
+        // Apply morphological operations to reduce noise
+        Imgproc.erode(ws.mask, ws.morphed, active.kernel);
+        Imgproc.dilate(ws.morphed, ws.morphed, active.kernel);
+        if (timed) {
+            time = mark(PipelineDiagnostics.MORPHOLOGY, time);
+        }
+        return time;
+    }
+
+    private Mat segmentStripe(Mat input, int outputWidth, DetectionWorkspace ws) {
+        segmentRows(input, outputWidth, ws, false);
+        return ws.morphed;
+    }
+
+    private boolean locateNote(Mat image, boolean useRegion, DetectionWorkspace ws, double[] result) {
+        long time = segment(image, useRegion, ws);
+
+        // Find contours in the binary mask, in full-frame coordinates
+        ws.contourOffset.x = region.x;
+        ws.contourOffset.y = region.y;
+        ws.findContours();
+        long contourTime = System.nanoTime() - time;
+        time += contourTime;
+
+        beginOverlay(image, ws);
+        if (overlayFrame != null && useRegion) {
+            overlayFrame.rectangle(region.x, region.y, region.x + region.width - 1, region.y + region.height - 1,
+                    YELLOW, 1);
+        }
+        long overlayTime = System.nanoTime() - time;
+        time += overlayTime;
+
+        // Find the extent of all contours over the size threshold, and the
+        // leftmost and rightmost points of those that approximate to a
+        // four-sided polygon
+        double leftmostX = Double.MAX_VALUE;
+        double rightmostX = Double.MIN_VALUE;
+        double topmostY = Double.MAX_VALUE;
+        double bottommostY = Double.MIN_VALUE;
+        double refinedLeftmostX = Double.MAX_VALUE;
+        double refinedRightmostX = Double.MIN_VALUE;
+        double refinedLeftY = 0;
+        double refinedRightY = 0;
+        boolean refined = false;
+
+        for (int i = 0; i < ws.contours.size(); i++) {
+            MatOfPoint contour = ws.contours.get(i);
+            if (Imgproc.contourArea(contour) <= minArea) {
+                continue;
+            }
+
+            int count = ws.readPoints(contour);
+            for (int p = 0; p < count; p++) {
+                int x = ws.points[p * 2];
+                int y = ws.points[p * 2 + 1];
+                if (x < leftmostX) {
+                    leftmostX = x;
+                }
+                if (x > rightmostX) {
+                    rightmostX = x;
+                }
+                if (y < topmostY) {
+                    topmostY = y;
+                }
+                if (y > bottommostY) {
+                    bottommostY = y;
+                }
+            }
+
+            // Approximate the contour to a polygon
+            contour.convertTo(ws.contour2f, CvType.CV_32F);
+            double epsilon = 0.02 * Imgproc.arcLength(ws.contour2f, true);
+            Imgproc.approxPolyDP(ws.contour2f, ws.approxCurve, epsilon, true);
+
+            // Keep it if it has 4 vertices (rectangle-like shape)
+            if (ws.approxCurve.rows() != 4) {
+                continue;
+            }
+            refined = true;
+            ws.approxCurve.get(0, 0, ws.quad);
+            for (int v = 0; v < 4; v++) {
+                // approxPolyDP keeps input vertices, so these are integral
+                double x = ws.quad[v * 2];
+                double y = ws.quad[v * 2 + 1];
+                if (x < refinedLeftmostX) {
+                    refinedLeftmostX = x;
+                    refinedLeftY = y;
+                }
+                if (x > refinedRightmostX) {
+                    refinedRightmostX = x;
+                    refinedRightY = y;
+                }
+                drawLine(ws.quad[v * 2], ws.quad[v * 2 + 1],
+                        ws.quad[(v + 1) % 4 * 2], ws.quad[(v + 1) % 4 * 2 + 1], GREEN, 2);
+            }
+        }
+
+        long now = System.nanoTime();
+        contourTime += now - time;
+        time = now;
+
+        int leftX = (int) leftmostX;
+        int rightX = (int) rightmostX;
+
+        int centerOffset = (leftX - rightX) / 2;
+
+        int centerX = frameWidth / 2;
+
+        drawLine(leftX, 0, leftX, frameHeight, RED, 1);
+        drawLine(rightX, 0, rightX, frameHeight, RED, 1);
+
+        drawLine(0, frameHeight / 2, frameWidth, frameHeight / 2, BLUE, 1);
+        drawLine(centerX, 0, centerX, frameHeight, BLUE, 1);
+
+        drawLine(centerX - centerOffset, 0, centerX - centerOffset, frameHeight, GREEN, 1);
+        drawLine(centerX + centerOffset, 0, centerX + centerOffset, frameHeight, GREEN, 1);
+        now = System.nanoTime();
+        overlayTime += now - time;
+        time = now;
+
+        if (overlayFrame != null) {
+            overlay.submit(overlayFrame);
+        }
+        if (diagnostics != null) {
+            diagnostics.record(PipelineDiagnostics.CONTOURS, contourTime);
+            diagnostics.record(PipelineDiagnostics.OVERLAY, overlayTime);
+            diagnostics.mark(PipelineDiagnostics.PUT_FRAME, time);
+        }
+
+        if (!refined || !solvePose(refinedLeftmostX, refinedLeftY, refinedRightmostX, refinedRightY, result)) {
+            return false;
+        }
+
+        updateTrack(leftmostX, rightmostX, topmostY, bottommostY);
+        return true;
+    }
+
+    /**
+     * Find every note candidate with connected-component statistics, which
+     * gives each blob's area and bounding box in one pass over the mask.
+     */
+    private boolean locateNotes(Mat image, DetectionWorkspace ws) {
+        long time = segment(image, false, ws);
+
+        int labels = Imgproc.connectedComponentsWithStats(ws.morphed, ws.labels, ws.stats, ws.centroids, 8,
+                CvType.CV_32S);
+        int[] stats = ws.readStats(labels);
+        long componentTime = System.nanoTime() - time;
+        time += componentTime;
+
+        beginOverlay(image, ws);
+
+        for (int label = 1; label < labels; label++) {
+            int s = label * Imgproc.CC_STAT_MAX;
+            int area = stats[s + Imgproc.CC_STAT_AREA];
+            if (area <= minArea) {
+                continue;
+            }
+            int left = stats[s + Imgproc.CC_STAT_LEFT];
+            int top = stats[s + Imgproc.CC_STAT_TOP];
+            int w = stats[s + Imgproc.CC_STAT_WIDTH];
+            int h = stats[s + Imgproc.CC_STAT_HEIGHT];
+
+            double middle = top + (h - 1) / 2.0;
+            boolean valid = solvePose(left, middle, left + w - 1, middle, notePose);
+            drawRect(left, top, w, h, valid ? GREEN : RED);
+            if (valid) {
+                addNote(notePose[0], notePose[1], confidence(notePose[0], w, h, area));
+            }
+        }
+
+        drawLine(0, frameHeight / 2, frameWidth, frameHeight / 2, BLUE, 1);
+        drawLine(frameWidth / 2, 0, frameWidth / 2, frameHeight, BLUE, 1);
+        long now = System.nanoTime();
+        long overlayTime = now - time;
+        time = now;
+
+        if (overlayFrame != null) {
+            overlay.submit(overlayFrame);
+        }
+        if (diagnostics != null) {
+            diagnostics.record(PipelineDiagnostics.CONTOURS, componentTime);
+            diagnostics.record(PipelineDiagnostics.OVERLAY, overlayTime);
+            diagnostics.mark(PipelineDiagnostics.PUT_FRAME, time);
+        }
+
+        notePose[0] = noteCount > 0 ? notes[0] : 0.0;
+        notePose[1] = noteCount > 0 ? notes[1] : 0.0;
+        return noteCount > 0;
+    }
+
+    /**
+     * Insert a candidate in distance order, dropping the farthest when full.
+     */
+    private void addNote(double distance, double angle, double confidence) {
+        int i;
+        if (noteCount < maxNotes) {
+            i = noteCount++;
+        } else if (distance < notes[(maxNotes - 1) * 3]) {
+            i = maxNotes - 1;
+        } else {
+            return;
+        }
+        while (i > 0 && notes[(i - 1) * 3] > distance) {
+            notes[i * 3] = notes[(i - 1) * 3];
+            notes[i * 3 + 1] = notes[(i - 1) * 3 + 1];
+            notes[i * 3 + 2] = notes[(i - 1) * 3 + 2];
+            i--;
+        }
+        notes[i * 3] = distance;
+        notes[i * 3 + 1] = angle;
+        notes[i * 3 + 2] = confidence;
+    }
+
+    /**
+     * How note-like a blob is, 0 to 1. A note lying on the floor looks flattened
+     * by the camera's depression angle, and a ring fills at most an ellipse's
+     * share of its bounding box; solid rectangles such as bumpers fail both.
+     */
+    private double confidence(double distance, int w, int h, int area) {
+        double camElevation = active.camElevation;
+        double expectedAspect = camElevation / Math.hypot(distance, camElevation);
+        double ratio = ((double) h / w) / expectedAspect;
+        double aspectScore = Math.min(ratio, 1 / ratio);
+        double fill = (double) area / ((double) w * h);
+        double fillScore = fill <= ELLIPSE_FILL ? 1.0 : Math.max(0.0, (1 - fill) / (1 - ELLIPSE_FILL));
+        return aspectScore * fillScore;
+    }
+
+    /**
+     * Distance and angle of a note from the horizontal extent of its image.
+     * With a calibration, the two extreme points are undistorted through the
+     * angle table; otherwise angles are linear across the field of view.
+     *
+     * @param left   leftmost pixel column of the note
+     * @param leftY  row of the leftmost point
+     * @param right  rightmost pixel column of the note
+     * @param rightY row of the rightmost point
+     * @param result receives { distance, angle }
+     * @return false if the extent cannot be a note on the floor
+     */
+    private boolean solvePose(double left, double leftY, double right, double rightY, double[] result) {
+        final double camElevation = active.camElevation;
+        final double leftAngle;
+        final double rightAngle;
+        if (active.angles != null) {
+            leftAngle = active.angles.angle(left, leftY, frameWidth, frameHeight);
+            rightAngle = active.angles.angle(right, rightY, frameWidth, frameHeight);
+        } else {
+            final double perPixel = active.fov / frameWidth;
+            final double center = frameWidth / 2.0;
+            leftAngle = perPixel * (left - center);
+            rightAngle = perPixel * (right - center);
+        }
+
+        // The ring's radius subtends half of its angular width
+        final double hypDistance = active.ringRadius / Math.tan((rightAngle - leftAngle) / 2);
+        if (hypDistance <= camElevation) {
+            return false;
+        }
+
+        final double nD = Math.sqrt(hypDistance * hypDistance - camElevation * camElevation);
+        final double nTheta = (leftAngle + rightAngle) / 2;
+
+        if (nTheta > 2) {
+            return false;
+        }
+
+        result[0] = nD;
+        result[1] = nTheta;
+        return true;
+    }
+
+    private long mark(int stage, long start) {
+        return diagnostics != null ? diagnostics.mark(stage, start) : start;
+    }
+
+    /**
+     * Start this frame's overlay with a copy of the mask, if one is wanted.
+     */
+    private void beginOverlay(Mat image, DetectionWorkspace ws) {
+        overlayFrame = overlay != null && !warmingUp ? overlay.begin() : null;
+        if (overlayFrame != null) {
+            overlayFrame.setMask(ws.morphed, region, yuyv ? image.cols() * 2 : image.cols(), image.rows());
+        }
+    }
+
+    private void drawRect(int x, int y, int w, int h, Scalar color) {
+        if (overlayFrame != null) {
+            overlayFrame.rectangle(x, y, x + w - 1, y + h - 1, color, 1);
+        }
+    }
+
+    private void drawLine(double x1, double y1, double x2, double y2, Scalar color, int thickness) {
+        if (overlayFrame != null) {
+            overlayFrame.line(x1, y1, x2, y2, color, thickness);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import java.nio.ByteBuffer;
+
+/**
+ * One camera's result for one frame, packed into a single binary record so it
+ * goes out as one NetworkTables message on the raw NoteFrame topic.
+ *
+ * <p>
+ * The same class encodes on the coprocessor and decodes on the robot; it only
+ * uses java.nio, so it can be copied into robot code as is. Instances are
+ * reused: fill the fields and call {@link #write}, or call {@link #read} and
+ * read the fields. Neither allocates once the notes array is big enough.
+ *
+ * <p>
+ * Layout, little-endian, version 1:
+ *
+ * <pre>
+ *  0  u8   version
+ *  1  u8   flags, FLAG_*
+ *  2  u16  note count
+ *  4  u32  frame sequence, low 32 bits
+ *  8  i64  capture time, microseconds on the NT time base
+ * 16  f32  capture-to-publish latency, milliseconds
+ * 20  f32  filtered distance, meters
+ * 24  f32  filtered angle, radians
+ * 28  per note, nearest first: f32 distance, f32 angle, f32 confidence
+ * </pre>
+ *
+ * Later versions only append fields, so a reader can accept any version at
+ * least as new as its own and ignore the tail.
+ */
+public final class NoteFrame {
+    public static final int VERSION = 1;
+
+    /* NetworkTables type string for the raw topic */
+    public static final String TYPE_STRING = "NoteFrame";
+
+    public static final int HEADER_SIZE = 28;
+    public static final int NOTE_SIZE = 12;
+
+    /* A note was found in this frame */
+    public static final int FLAG_HAS_NOTE = 1;
+    /* The filtered pose is tracking a note */
+    public static final int FLAG_FILTERED = 2;
+    /* Notes come from multi-note detection and carry a real confidence */
+    public static final int FLAG_MULTI = 4;
+
+    public int flags;
+    public long sequence;
+    public long captureTime;
+    public double latency;
+    public double filteredDistance;
+    public double filteredAngle;
+
+    /* { distance, angle, confidence } per note, first noteCount used */
+    public int noteCount;
+    public double[] notes = new double[0];
+
+    /**
+     * Encoded size of a record with the given number of notes.
+     */
+    public static int size(int noteCount) {
+        return HEADER_SIZE + noteCount * NOTE_SIZE;
+    }
+
+    /**
+     * Copy notes packed as { distance, angle, confidence } triples.
+     */
+    public void setNotes(double[] packed, int count) {
+        ensureCapacity(count);
+        System.arraycopy(packed, 0, notes, 0, count * 3);
+        noteCount = count;
+    }
+
+    /**
+     * Encode into a buffer of exactly size(noteCount) bytes, from position 0.
+     * The buffer must be little-endian.
+     */
+    public void write(ByteBuffer buffer) {
+        buffer.put(0, (byte) VERSION);
+        buffer.put(1, (byte) flags);
+        buffer.putShort(2, (short) noteCount);
+        buffer.putInt(4, (int) sequence);
+        buffer.putLong(8, captureTime);
+        buffer.putFloat(16, (float) latency);
+        buffer.putFloat(20, (float) filteredDistance);
+        buffer.putFloat(24, (float) filteredAngle);
+        for (int i = 0; i < noteCount; i++) {
+            int offset = HEADER_SIZE + i * NOTE_SIZE;
+            buffer.putFloat(offset, (float) notes[i * 3]);
+            buffer.putFloat(offset + 4, (float) notes[i * 3 + 1]);
+            buffer.putFloat(offset + 8, (float) notes[i * 3 + 2]);
+        }
+    }
+
+    /**
+     * Decode a record.
+     *
+     * @return false, leaving the fields unchanged, if the data is too short or
+     *         from an older version than this reader
+     */
+    public boolean read(byte[] data) {
+        if (data.length < HEADER_SIZE || (data[0] & 0xff) < VERSION) {
+            return false;
+        }
+        int count = (data[2] & 0xff) | (data[3] & 0xff) << 8;
+        if (data.length < size(count)) {
+            return false;
+        }
+
+        flags = data[1] & 0xff;
+        sequence = getInt(data, 4) & 0xffffffffL;
+        captureTime = getInt(data, 8) & 0xffffffffL | (long) getInt(data, 12) << 32;
+        latency = getFloat(data, 16);
+        filteredDistance = getFloat(data, 20);
+        filteredAngle = getFloat(data, 24);
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            int offset = HEADER_SIZE + i * NOTE_SIZE;
+            notes[i * 3] = getFloat(data, offset);
+            notes[i * 3 + 1] = getFloat(data, offset + 4);
+            notes[i * 3 + 2] = getFloat(data, offset + 8);
+        }
+        noteCount = count;
+        return true;
+    }
+
+    public boolean hasNote() {
+        return (flags & FLAG_HAS_NOTE) != 0;
+    }
+
+    public boolean isFiltered() {
+        return (flags & FLAG_FILTERED) != 0;
+    }
+
+    private static int getInt(byte[] data, int offset) {
+        return (data[offset] & 0xff) | (data[offset + 1] & 0xff) << 8 | (data[offset + 2] & 0xff) << 16
+                | (data[offset + 3] & 0xff) << 24;
+    }
+
+    private static float getFloat(byte[] data, int offset) {
+        return Float.intBitsToFloat(getInt(data, offset));
+    }
+
+    private void ensureCapacity(int count) {
+        if (notes.length < count * 3) {
+            notes = new double[count * 3];
+        }
+    }
+}
@@ -0,0 +1,91 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.PubSubOption;
+import edu.wpi.first.util.WPIUtilJNI;
+
+/**
+ * Publishes every camera's NoteTracker prediction at a fixed rate, faster than
+ * the cameras run, so the robot's control loop gets a fresh estimate between
+ * frames.
+ *
+ * <p>
+ * One thread serves all cameras. Each tick is a few multiplies and one
+ * NetworkTables set per camera, a few microseconds in all.
+ */
+public final class NotePredictor {
+    private static final class Entry {
+        final NoteTracker tracker;
+        final DoubleArrayPublisher pub;
+        final double[] pose = new double[2];
+
+        Entry(NoteTracker tracker, DoubleArrayPublisher pub) {
+            this.tracker = tracker;
+            this.pub = pub;
+        }
+    }
+
+    private final List<Entry> entries = new CopyOnWriteArrayList<>();
+    private final long periodNanos;
+    private final PubSubOption[] options;
+    private final Thread thread;
+
+    /**
+     * Create a predictor. Call start() to begin publishing.
+     *
+     * @param rate predictions per second
+     */
+    public NotePredictor(double rate) {
+        periodNanos = (long) (1e9 / rate);
+        // Send each tick rather than NetworkTables' default 100 ms batches;
+        // only the newest prediction matters, but repeats still carry a fresh
+        // timestamp
+        options = new PubSubOption[] { PubSubOption.periodic(1.0 / rate), PubSubOption.keepDuplicates(true) };
+        thread = new Thread(this::run, "NotePredictor");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Publish a tracker's prediction as PredictedNotePose in a camera's subtable.
+     */
+    public void add(NoteTracker tracker, NetworkTable table) {
+        entries.add(new Entry(tracker, table.getDoubleArrayTopic("PredictedNotePose").publish(options)));
+    }
+
+    /**
+     * Start the publishing thread.
+     */
+    public void start() {
+        thread.start();
+    }
+
+    private void run() {
+        long next = System.nanoTime();
+        while (!Thread.currentThread().isInterrupted()) {
+            long now = WPIUtilJNI.now();
+            for (Entry entry : entries) {
+                entry.tracker.predict(now, entry.pose);
+                entry.pub.set(entry.pose, now);
+            }
+
+            // Fixed-rate schedule; after a stall, skip missed ticks instead of
+            // bursting to catch up
+            next += periodNanos;
+            long wait = next - System.nanoTime();
+            if (wait <= 0) {
+                next = System.nanoTime();
+            }
+            while (wait > 0) {
+                LockSupport.parkNanos(wait);
+                wait = next - System.nanoTime();
+            }
+        }
+    }
+}
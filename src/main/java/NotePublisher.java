@@ -0,0 +1,173 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.PubSubOption;
+import edu.wpi.first.networktables.RawPublisher;
+import edu.wpi.first.util.WPIUtilJNI;
+
+/**
+ * Publishes one camera's NoteDetector results to its NetworkTables subtable,
+ * as separate topics, as one packed {@link NoteFrame} record per frame on the
+ * raw NoteFrame topic, or both.
+ */
+public class NotePublisher implements PipelineRunner.Listener<NoteDetector> {
+    /**
+     * Which topics results go out on.
+     */
+    public enum Output {
+        /* NotePose, Notes, NoteLatency, NoteSequence and FilteredNotePose */
+        TOPICS,
+        /* NoteFrame only: one message per frame */
+        PACKED,
+        BOTH,
+    }
+
+    /* Camera rate assumed by the shorter constructors */
+    private static final double DEFAULT_FRAME_RATE = 30;
+
+    /* Note pose as { distance, angle }; this and the other separate topics are
+       null when only packed records are published */
+    private final DoubleArrayPublisher posePub;
+
+    /* Every candidate nearest first as { distance, angle, confidence } triples */
+    private final DoubleArrayPublisher notesPub;
+
+    /* Capture-to-publish latency in milliseconds and frame sequence of each NotePose */
+    private final DoublePublisher latencyPub;
+    private final IntegerPublisher sequencePub;
+
+    /* Tracker fed with each result and its filtered pose, or null */
+    private final NoteTracker tracker;
+    private final DoubleArrayPublisher filteredPub;
+    private final double[] filtered = new double[2];
+
+    /* Packed record publisher, or null, and an exact-length buffer per note count */
+    private final RawPublisher framePub;
+    private final NoteFrame record = new NoteFrame();
+    private final boolean multiNote;
+    private byte[][] frameBytes = new byte[0][];
+    private ByteBuffer[] frameBuffers = new ByteBuffer[0];
+
+    /**
+     * Create publishers in a camera's subtable.
+     */
+    public NotePublisher(NetworkTable table) {
+        this(table, null);
+    }
+
+    /**
+     * Create publishers in a camera's subtable, feeding each result to a
+     * tracker and publishing its estimate as FilteredNotePose.
+     */
+    public NotePublisher(NetworkTable table, NoteTracker tracker) {
+        this(table, tracker, Output.TOPICS, false, DEFAULT_FRAME_RATE);
+    }
+
+    /**
+     * Create publishers in a camera's subtable for the chosen output.
+     *
+     * @param multiNote whether the detector runs multi-note detection, so
+     *                  packed records flag their confidences as meaningful
+     * @param frameRate camera frames per second, which sets how often
+     *                  NetworkTables sends
+     */
+    public NotePublisher(NetworkTable table, NoteTracker tracker, Output output, boolean multiNote,
+            double frameRate) {
+        this.tracker = tracker;
+        this.multiNote = multiNote;
+        PubSubOption[] options = perFrame(frameRate);
+        if (output != Output.PACKED) {
+            filteredPub = tracker != null ? table.getDoubleArrayTopic("FilteredNotePose").publish(options) : null;
+            posePub = table.getDoubleArrayTopic("NotePose").publish(options);
+            notesPub = table.getDoubleArrayTopic("Notes").publish(options);
+            latencyPub = table.getDoubleTopic("NoteLatency").publish(options);
+            sequencePub = table.getIntegerTopic("NoteSequence").publish(options);
+        } else {
+            filteredPub = null;
+            posePub = null;
+            notesPub = null;
+            latencyPub = null;
+            sequencePub = null;
+        }
+        framePub = output != Output.TOPICS ? table.getRawTopic("NoteFrame").publish(NoteFrame.TYPE_STRING, options)
+                : null;
+    }
+
+    /**
+     * Publish options for a topic set once per frame. NetworkTables otherwise
+     * sends every 100 ms, batching several frames into one update and dropping
+     * all but the last; with these every frame goes out within a frame period,
+     * including repeats such as successive frames with no note.
+     */
+    static PubSubOption[] perFrame(double frameRate) {
+        return new PubSubOption[] { PubSubOption.periodic(1.0 / frameRate), PubSubOption.sendAll(true),
+            PubSubOption.keepDuplicates(true) };
+    }
+
+    @Override
+    public void copyPipelineOutputs(NoteDetector pipeline, FrameGrabber.Frame frame) {
+        // Stamp everything with the capture time; NT4 shifts it to the server's
+        // time base so the robot can match odometry
+        long latency = WPIUtilJNI.now() - frame.captureTime;
+        boolean tracking = false;
+        if (tracker != null) {
+            if (pipeline.hasNote()) {
+                double[] pose = pipeline.getNotePose();
+                tracker.update(pose[0], pose[1], frame.captureTime);
+            }
+            tracking = tracker.predict(frame.captureTime, filtered);
+        }
+
+        if (posePub != null) {
+            posePub.set(pipeline.getNotePose(), frame.captureTime);
+            notesPub.set(pipeline.getNotes(), frame.captureTime);
+            latencyPub.set(latency / 1000.0, frame.captureTime);
+            sequencePub.set(frame.sequence, frame.captureTime);
+            if (filteredPub != null) {
+                filteredPub.set(filtered, frame.captureTime);
+            }
+        }
+
+        if (framePub != null) {
+            double[] notes = pipeline.getNotes();
+            int count = notes.length / 3;
+            record.flags = (pipeline.hasNote() ? NoteFrame.FLAG_HAS_NOTE : 0)
+                    | (tracking ? NoteFrame.FLAG_FILTERED : 0)
+                    | (multiNote ? NoteFrame.FLAG_MULTI : 0);
+            record.sequence = frame.sequence;
+            record.captureTime = frame.captureTime;
+            record.latency = latency / 1000.0;
+            record.filteredDistance = filtered[0];
+            record.filteredAngle = filtered[1];
+            record.setNotes(notes, count);
+            record.write(frameBuffer(count));
+            framePub.set(frameBytes[count], frame.captureTime);
+        }
+    }
+
+    /**
+     * Buffer for a record with the given note count, made the first time that
+     * count is seen.
+     */
+    private ByteBuffer frameBuffer(int count) {
+        if (count >= frameBytes.length) {
+            int length = count + 1;
+            frameBytes = Arrays.copyOf(frameBytes, length);
+            frameBuffers = Arrays.copyOf(frameBuffers, length);
+        }
+        if (frameBytes[count] == null) {
+            frameBytes[count] = new byte[NoteFrame.size(count)];
+            frameBuffers[count] = ByteBuffer.wrap(frameBytes[count]).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return frameBuffers[count];
+    }
+}
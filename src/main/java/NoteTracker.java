@@ -0,0 +1,116 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+/**
+ * Alpha-beta filter on a note's { distance, angle }.
+ *
+ * <p>
+ * Each detection corrects the estimate and its rate of change; frames without
+ * a note leave the estimate coasting on its velocity until the dropout timeout
+ * passes, so one failed frame does not drop the pose to { 0, 0 }. A detection
+ * far from the prediction is taken as a different note and restarts the
+ * filter. Updates come from the detection thread and predictions from the
+ * predictor thread; both are short and synchronized.
+ */
+public final class NoteTracker {
+    /* Innovation beyond which a detection restarts the filter */
+    private static final double RESET_DISTANCE = 1.0;
+    private static final double RESET_ANGLE = 0.35;
+
+    private final double alpha;
+    private final double beta;
+    private final long timeoutMicros;
+
+    private boolean valid;
+    private long lastDetection;
+    private long stateTime;
+    private double distance;
+    private double angle;
+    private double distanceRate;
+    private double angleRate;
+
+    /**
+     * Create a tracker.
+     *
+     * @param alpha          position gain, 0 to 1; higher follows detections
+     *                       more closely
+     * @param beta           velocity gain, 0 to 1, usually well below alpha
+     * @param timeoutSeconds how long the estimate survives without a detection
+     */
+    public NoteTracker(double alpha, double beta, double timeoutSeconds) {
+        this.alpha = alpha;
+        this.beta = beta;
+        timeoutMicros = (long) (timeoutSeconds * 1e6);
+    }
+
+    /**
+     * Correct the estimate with a detection.
+     *
+     * @param time capture time in microseconds
+     */
+    public synchronized void update(double measuredDistance, double measuredAngle, long time) {
+        double dt = (time - stateTime) / 1e6;
+        if (!isValid(time) || dt <= 0) {
+            reset(measuredDistance, measuredAngle, time);
+            return;
+        }
+
+        double predictedDistance = distance + distanceRate * dt;
+        double predictedAngle = angle + angleRate * dt;
+        double distanceError = measuredDistance - predictedDistance;
+        double angleError = measuredAngle - predictedAngle;
+        if (Math.abs(distanceError) > RESET_DISTANCE || Math.abs(angleError) > RESET_ANGLE) {
+            reset(measuredDistance, measuredAngle, time);
+            return;
+        }
+
+        distance = predictedDistance + alpha * distanceError;
+        angle = predictedAngle + alpha * angleError;
+        distanceRate += beta * distanceError / dt;
+        angleRate += beta * angleError / dt;
+        stateTime = time;
+        lastDetection = time;
+    }
+
+    private void reset(double measuredDistance, double measuredAngle, long time) {
+        distance = measuredDistance;
+        angle = measuredAngle;
+        distanceRate = 0;
+        angleRate = 0;
+        stateTime = time;
+        lastDetection = time;
+        valid = true;
+    }
+
+    /**
+     * Whether the estimate is still alive at a time.
+     */
+    public synchronized boolean isValid(long time) {
+        if (valid && time - lastDetection > timeoutMicros) {
+            valid = false;
+        }
+        return valid;
+    }
+
+    /**
+     * Extrapolate the estimate to a time, at most the dropout timeout past the
+     * last detection.
+     *
+     * @param time   microseconds, on the capture time base
+     * @param result receives { distance, angle }, or { 0, 0 } when no note is
+     *               being tracked
+     * @return whether a note is being tracked
+     */
+    public synchronized boolean predict(long time, double[] result) {
+        if (!isValid(time)) {
+            result[0] = 0.0;
+            result[1] = 0.0;
+            return false;
+        }
+        double dt = (time - stateTime) / 1e6;
+        result[0] = distance + distanceRate * dt;
+        result[1] = angle + angleRate * dt;
+        return true;
+    }
+}
@@ -0,0 +1,271 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import edu.wpi.first.cscore.CvSource;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Renders a detector's debug overlay on its own low-priority thread.
+ *
+ * <p>
+ * The detection thread only copies its mask and records what to draw into a
+ * {@link Frame}, then hands it over through a single slot; if the overlay
+ * thread has not picked up the previous frame it is replaced, so detection
+ * never waits. The BGR conversion, drawing, scaling and putFrame all happen on
+ * the overlay thread. When no client is connected to the stream, or the
+ * overlay rate cap has not elapsed, {@link #begin()} returns null and the
+ * detector skips the overlay entirely.
+ */
+public final class OverlayStage implements AutoCloseable {
+    private static final int LINE = 0;
+    private static final int RECT = 1;
+
+    /* How often the overlay thread checks for stream clients when idle */
+    private static final long IDLE_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /* Niceness of the overlay thread, so it yields to detection */
+    private static final int NICE = 10;
+
+    private static final Scalar BLACK = new Scalar(0, 0, 0);
+
+    /**
+     * One overlay: the mask, where it sits in the frame and what to draw on it.
+     */
+    public static final class Frame {
+        private final Mat mask = new Mat();
+        private final Rect region = new Rect();
+        private int width;
+        private int height;
+        private boolean partial;
+
+        private int count;
+        private int[] kinds = new int[16];
+        private double[] coords = new double[64];
+        private Scalar[] colors = new Scalar[16];
+        private int[] thicknesses = new int[16];
+
+        /**
+         * Copy the processed mask. If the region does not cover the whole frame,
+         * the rest of the frame is drawn black.
+         */
+        public void setMask(Mat source, Rect sourceRegion, int frameWidth, int frameHeight) {
+            source.copyTo(mask);
+            region.x = sourceRegion.x;
+            region.y = sourceRegion.y;
+            region.width = sourceRegion.width;
+            region.height = sourceRegion.height;
+            width = frameWidth;
+            height = frameHeight;
+            partial = region.width != width || region.height != height;
+        }
+
+        /**
+         * Draw a line.
+         */
+        public void line(double x1, double y1, double x2, double y2, Scalar color, int thickness) {
+            add(LINE, x1, y1, x2, y2, color, thickness);
+        }
+
+        /**
+         * Outline a rectangle, corners inclusive.
+         */
+        public void rectangle(double x1, double y1, double x2, double y2, Scalar color, int thickness) {
+            add(RECT, x1, y1, x2, y2, color, thickness);
+        }
+
+        private void add(int kind, double x1, double y1, double x2, double y2, Scalar color, int thickness) {
+            if (count == kinds.length) {
+                int capacity = count * 2;
+                kinds = Arrays.copyOf(kinds, capacity);
+                coords = Arrays.copyOf(coords, capacity * 4);
+                colors = Arrays.copyOf(colors, capacity);
+                thicknesses = Arrays.copyOf(thicknesses, capacity);
+            }
+            kinds[count] = kind;
+            coords[count * 4] = x1;
+            coords[count * 4 + 1] = y1;
+            coords[count * 4 + 2] = x2;
+            coords[count * 4 + 3] = y2;
+            colors[count] = color;
+            thicknesses[count] = thickness;
+            count++;
+        }
+    }
+
+    private final CvSource output;
+    private final long minPeriodNanos;
+    private final Size outputSize;
+    private final Thread thread;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition frameReady = lock.newCondition();
+    private Frame filling = new Frame();
+    private Frame pending = new Frame();
+    private Frame rendering = new Frame();
+    private boolean pendingIsNew;
+
+    /* Whether the stream has a client, refreshed by the overlay thread */
+    private volatile boolean watched;
+    private volatile boolean running = true;
+    private long lastBegin;
+    private volatile long rendered;
+
+    /* Overlay thread buffers */
+    private final Mat bgr = new Mat();
+    private final Mat scaled = new Mat();
+    private final Point start = new Point();
+    private final Point end = new Point();
+
+    /**
+     * Create the stage and start its thread.
+     *
+     * @param output stream source for the overlay
+     * @param maxFps overlay rate cap, or 0 for every frame
+     * @param width  output width, or 0 for the frame's own size
+     * @param height output height, or 0 for the frame's own size
+     */
+    public OverlayStage(CvSource output, double maxFps, int width, int height) {
+        this.output = output;
+        minPeriodNanos = maxFps > 0 ? (long) (1e9 / maxFps) : 0;
+        outputSize = width > 0 && height > 0 ? new Size(width, height) : null;
+        watched = output.isEnabled();
+
+        thread = new Thread(this::run, "Overlay-" + output.getName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Start an overlay for the current frame.
+     *
+     * @return a cleared frame to fill and pass to submit(), or null if no
+     *         overlay is wanted for this frame
+     */
+    public Frame begin() {
+        if (!watched) {
+            return null;
+        }
+        long now = System.nanoTime();
+        if (minPeriodNanos > 0 && now - lastBegin < minPeriodNanos) {
+            return null;
+        }
+        lastBegin = now;
+        filling.count = 0;
+        return filling;
+    }
+
+    /**
+     * Hand a filled frame to the overlay thread, replacing any frame it has not
+     * started on yet.
+     */
+    public void submit(Frame frame) {
+        lock.lock();
+        try {
+            filling = pending;
+            pending = frame;
+            pendingIsNew = true;
+            frameReady.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Overlays rendered and put to the stream. */
+    public long getRendered() {
+        return rendered;
+    }
+
+    private void run() {
+        ThreadAffinity.setCurrentThreadNice(NICE);
+        while (running) {
+            Frame frame;
+            lock.lock();
+            try {
+                if (!pendingIsNew) {
+                    frameReady.awaitNanos(IDLE_POLL_NANOS);
+                }
+                if (!pendingIsNew) {
+                    frame = null;
+                } else {
+                    frame = pending;
+                    pending = rendering;
+                    rendering = frame;
+                    pendingIsNew = false;
+                }
+            } catch (InterruptedException ex) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            watched = output.isEnabled();
+            if (frame != null && watched) {
+                render(frame);
+                rendered++;
+            }
+        }
+    }
+
+    private void render(Frame frame) {
+        if (frame.partial) {
+            // Show the processed window in place on an otherwise black frame
+            bgr.create(frame.height, frame.width, CvType.CV_8UC3);
+            bgr.setTo(BLACK);
+            Mat window = bgr.submat(frame.region);
+            Imgproc.cvtColor(frame.mask, window, Imgproc.COLOR_GRAY2BGR);
+            window.release();
+        } else {
+            Imgproc.cvtColor(frame.mask, bgr, Imgproc.COLOR_GRAY2BGR);
+        }
+
+        for (int i = 0; i < frame.count; i++) {
+            start.x = frame.coords[i * 4];
+            start.y = frame.coords[i * 4 + 1];
+            end.x = frame.coords[i * 4 + 2];
+            end.y = frame.coords[i * 4 + 3];
+            if (frame.kinds[i] == RECT) {
+                Imgproc.rectangle(bgr, start, end, frame.colors[i], frame.thicknesses[i]);
+            } else {
+                Imgproc.line(bgr, start, end, frame.colors[i], frame.thicknesses[i]);
+            }
+        }
+
+        if (outputSize != null && (outputSize.width != bgr.cols() || outputSize.height != bgr.rows())) {
+            Imgproc.resize(bgr, scaled, outputSize, 0, 0, Imgproc.INTER_AREA);
+            output.putFrame(scaled);
+        } else {
+            output.putFrame(bgr);
+        }
+    }
+
+    /**
+     * Stop the overlay thread and free its buffers.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        filling.mask.release();
+        pending.mask.release();
+        rendering.mask.release();
+        bgr.release();
+        scaled.release();
+    }
+}
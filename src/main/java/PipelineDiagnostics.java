@@ -0,0 +1,180 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import java.util.Arrays;
+
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+
+/**
+ * Per-stage latency histograms and health counters for one camera's vision
+ * loop, published to NetworkTables at a low rate.
+ *
+ * <p>
+ * Stages are timed on the detection thread with System.nanoTime and recorded
+ * into a {@link LatencyHistogram}, which costs well under a microsecond per
+ * frame. Once per publish period the same thread publishes { p50, p95, p99,
+ * max } in milliseconds for each stage over the period just ended, then
+ * starts new histograms. Nothing is shared with other threads, so there is no
+ * locking on the hot path.
+ */
+public final class PipelineDiagnostics {
+    /* Capture to start of processing */
+    public static final int GRAB = 0;
+    /* Subsampled orange presence check */
+    public static final int GATE = 1;
+    /* Downscaling to the adaptive processing scale */
+    public static final int SCALE = 2;
+    /* BGR to HSV; the lookup table and YUYV paths count color conversion
+       under THRESHOLD */
+    public static final int CONVERT = 3;
+    public static final int THRESHOLD = 4;
+    /* Erode and dilate; with striped segmentation, the whole threshold and
+       morphology chain */
+    public static final int MORPHOLOGY = 5;
+    /* Contour search and analysis */
+    public static final int CONTOURS = 6;
+    /* Mask copy and draw list on the detection thread; rendering is off it */
+    public static final int OVERLAY = 7;
+    /* Handoff to the overlay stage */
+    public static final int PUT_FRAME = 8;
+    public static final int PUBLISH = 9;
+    /* Whole pipeline run plus publish, excluding grab */
+    public static final int TOTAL = 10;
+
+    private static final String[] STAGE_NAMES = {
+        "Grab", "Gate", "Scale", "Convert", "Threshold", "Morphology", "Contours", "Overlay", "PutFrame",
+        "Publish", "Total",
+    };
+
+    public static final int STAGE_COUNT = STAGE_NAMES.length;
+
+    private static final long PUBLISH_PERIOD_NANOS = 1_000_000_000L;
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[STAGE_NAMES.length];
+    private final DoubleArrayPublisher[] stagePubs = new DoubleArrayPublisher[STAGE_NAMES.length];
+    /* Each stage's time in the current frame, for the match log */
+    private final long[] frameNanos = new long[STAGE_NAMES.length];
+    /* { p50, p95, p99, max } in milliseconds, reused for every stage */
+    private final double[] percentiles = new double[4];
+
+    private final DoublePublisher fpsPub;
+    private final IntegerPublisher droppedPub;
+    private final IntegerPublisher emptyPub;
+    /* Runner counts: stale frames dropped, results past deadline, failed frames */
+    private final IntegerPublisher stalePub;
+    private final IntegerPublisher missedPub;
+    private final IntegerPublisher errorsPub;
+    private final DoublePublisher heapPub;
+    /* Heap and Mat counts are process-wide, repeated in each camera's table */
+    private final IntegerPublisher liveMatsPub;
+
+    private long windowStart = System.nanoTime();
+    private long windowFrames;
+
+    /**
+     * Create publishers in a camera's diagnostics subtable.
+     */
+    public PipelineDiagnostics(NetworkTable table) {
+        for (int i = 0; i < STAGE_NAMES.length; i++) {
+            histograms[i] = new LatencyHistogram();
+            stagePubs[i] = table.getDoubleArrayTopic(STAGE_NAMES[i]).publish();
+        }
+        fpsPub = table.getDoubleTopic("Fps").publish();
+        droppedPub = table.getIntegerTopic("Dropped").publish();
+        emptyPub = table.getIntegerTopic("Empty").publish();
+        stalePub = table.getIntegerTopic("Stale").publish();
+        missedPub = table.getIntegerTopic("MissedDeadline").publish();
+        errorsPub = table.getIntegerTopic("Errors").publish();
+        heapPub = table.getDoubleTopic("HeapMB").publish();
+        liveMatsPub = table.getIntegerTopic("LiveMats").publish();
+    }
+
+    /**
+     * Name of a stage, as published.
+     */
+    public static String stageName(int stage) {
+        return STAGE_NAMES[stage];
+    }
+
+    /**
+     * Start a new frame's per-frame stage times.
+     */
+    public void beginFrame() {
+        Arrays.fill(frameNanos, 0);
+    }
+
+    /**
+     * Record a stage's duration.
+     */
+    public void record(int stage, long nanos) {
+        histograms[stage].record(nanos);
+        frameNanos[stage] += nanos;
+    }
+
+    /**
+     * Time spent in a stage in the current frame.
+     */
+    public long getFrameNanos(int stage) {
+        return frameNanos[stage];
+    }
+
+    /**
+     * Record a stage that started at the given time and ends now.
+     *
+     * @return the end time, to start the next stage from
+     */
+    public long mark(int stage, long start) {
+        long now = System.nanoTime();
+        record(stage, now - start);
+        return now;
+    }
+
+    /**
+     * Count a processed frame towards the fps figure.
+     */
+    public void frameProcessed() {
+        windowFrames++;
+    }
+
+    /**
+     * Publish and start a new period if the current one is over.
+     *
+     * @param source  the runner's frame source, for drop and empty counts
+     * @param runner  the camera's runner, for skipped, stale, missed and
+     *                failed frame counts
+     */
+    public void publishIfDue(FrameSource source, PipelineRunner<?> runner) {
+        long now = System.nanoTime();
+        long elapsed = now - windowStart;
+        if (elapsed < PUBLISH_PERIOD_NANOS) {
+            return;
+        }
+
+        for (int i = 0; i < histograms.length; i++) {
+            LatencyHistogram histogram = histograms[i];
+            percentiles[0] = histogram.getPercentile(50) / 1e6;
+            percentiles[1] = histogram.getPercentile(95) / 1e6;
+            percentiles[2] = histogram.getPercentile(99) / 1e6;
+            percentiles[3] = histogram.getMax() / 1e6;
+            stagePubs[i].set(percentiles);
+            histogram.reset();
+        }
+
+        Runtime runtime = Runtime.getRuntime();
+        fpsPub.set(windowFrames * 1e9 / elapsed);
+        droppedPub.set(source.getOverwritten() + runner.getSkipped());
+        emptyPub.set(source.getDropped());
+        stalePub.set(runner.getStale());
+        missedPub.set(runner.getMissed());
+        errorsPub.set(runner.getErrors());
+        heapPub.set((runtime.totalMemory() - runtime.freeMemory()) / 1048576.0);
+        liveMatsPub.set(DetectionWorkspace.liveMats());
+
+        windowStart = now;
+        windowFrames = 0;
+    }
+}
@@ -0,0 +1,232 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import edu.wpi.first.util.WPIUtilJNI;
+import edu.wpi.first.vision.VisionPipeline;
+
+/**
+ * Runs a VisionPipeline on every new frame from a FrameGrabber.
+ *
+ * <p>
+ * Works like WPILib's VisionRunner, but takes frames from the camera's shared
+ * grabber, or a branch of its fan-out, instead of opening a second CvSink, so
+ * each frame is decoded once.
+ * The pipeline runs as soon as a frame arrives. An optional rate cap skips
+ * frames that arrive sooner than the configured period.
+ *
+ * <p>
+ * Scheduling works against a per-frame deadline measured from capture. The
+ * grabber holds at most one waiting frame, so work never queues up behind a
+ * slow frame; a frame already past its deadline when it is taken is dropped
+ * as stale instead of processed, and a result published after its deadline
+ * is counted as missed. An optional CPU budget spaces frames out so the
+ * pipeline uses at most that fraction of a core, keeping latency bounded when
+ * the processor is shared. A pipeline exception fails only that frame.
+ */
+public class PipelineRunner<P extends VisionPipeline> {
+    /**
+     * Listener called after each processed frame. Unlike VisionRunner.Listener
+     * it also gets the frame, so results can carry its capture time.
+     */
+    @FunctionalInterface
+    public interface Listener<P extends VisionPipeline> {
+        /**
+         * Called on the runner's thread after the pipeline processed a frame.
+         */
+        void copyPipelineOutputs(P pipeline, FrameGrabber.Frame frame);
+    }
+
+    private static final double FRAME_TIMEOUT = 1.0;
+
+    /* Shortest gap between logged pipeline errors */
+    private static final long ERROR_LOG_NANOS = 1_000_000_000L;
+
+    private final FrameSource source;
+    private final P pipeline;
+    private final Listener<? super P> listener;
+
+    private volatile boolean enabled = true;
+    private volatile long minPeriodNanos;
+    private volatile long deadlineMicros;
+    private volatile double cpuBudget = 1.0;
+    private long nextRunNanos = System.nanoTime();
+    private long lastErrorLog;
+    private long skipped;
+    private long stale;
+    private long missed;
+    private long errors;
+    private PipelineDiagnostics diagnostics;
+    private Listener<? super P> frameLog;
+
+    /**
+     * Create a runner.
+     *
+     * @param source   the camera's frame grabber or fan-out branch
+     * @param pipeline the pipeline to run
+     * @param listener called with the pipeline after each processed frame
+     */
+    public PipelineRunner(FrameSource source, P pipeline, Listener<? super P> listener) {
+        this.source = source;
+        this.pipeline = pipeline;
+        this.listener = listener;
+    }
+
+    /**
+     * Cap the processing rate. Zero or less removes the cap.
+     */
+    public void setMaxFps(double fps) {
+        minPeriodNanos = fps > 0 ? (long) (1e9 / fps) : 0;
+    }
+
+    /**
+     * Set the capture-to-result deadline. Zero or less removes it.
+     */
+    public void setDeadline(double seconds) {
+        deadlineMicros = seconds > 0 ? (long) (seconds * 1e6) : 0;
+    }
+
+    /**
+     * Limit processing to a fraction of one core, from 0 to 1. After each
+     * frame, frames are skipped until its processing time is that fraction of
+     * the time since it started. One or more removes the limit.
+     */
+    public void setCpuBudget(double fraction) {
+        if (fraction <= 0) {
+            throw new IllegalArgumentException("cpu budget must be above 0, got " + fraction);
+        }
+        cpuBudget = Math.min(1.0, fraction);
+    }
+
+    /**
+     * Record grab, publish and total time and frame counts into diagnostics,
+     * and publish them from the runner's thread.
+     */
+    public void setDiagnostics(PipelineDiagnostics diagnostics) {
+        this.diagnostics = diagnostics;
+    }
+
+    /**
+     * Set a second listener called after each processed frame once its timings
+     * are recorded, so it can log them. It must not block. Null turns it off.
+     */
+    public void setFrameLog(Listener<? super P> frameLog) {
+        this.frameLog = frameLog;
+    }
+
+    /**
+     * Wait for the next frame and run the pipeline on it.
+     */
+    public void runOnce() throws InterruptedException {
+        FrameGrabber.Frame frame = source.take(FRAME_TIMEOUT);
+        if (frame == null) {
+            System.out.println("No frame from '" + source.getName() + "'");
+            publishDiagnostics();
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (now - nextRunNanos < 0) {
+            skipped++;
+            return;
+        }
+
+        long age = WPIUtilJNI.now() - frame.captureTime;
+        if (diagnostics != null) {
+            diagnostics.beginFrame();
+            diagnostics.record(PipelineDiagnostics.GRAB, age * 1000);
+        }
+        long deadline = deadlineMicros;
+        if (deadline > 0 && age > deadline) {
+            stale++;
+            publishDiagnostics();
+            return;
+        }
+
+        try {
+            pipeline.process(frame.mat);
+            long processed = System.nanoTime();
+            listener.copyPipelineOutputs(pipeline, frame);
+
+            if (diagnostics != null) {
+                long end = diagnostics.mark(PipelineDiagnostics.PUBLISH, processed);
+                diagnostics.record(PipelineDiagnostics.TOTAL, end - now);
+                diagnostics.frameProcessed();
+            }
+            if (deadline > 0 && WPIUtilJNI.now() - frame.captureTime > deadline) {
+                missed++;
+            }
+            if (frameLog != null) {
+                frameLog.copyPipelineOutputs(pipeline, frame);
+            }
+        } finally {
+            schedule(now, System.nanoTime());
+            publishDiagnostics();
+        }
+    }
+
+    private void schedule(long start, long end) {
+        long next = start + minPeriodNanos;
+        double budget = cpuBudget;
+        if (budget < 1.0) {
+            next = Math.max(next, start + (long) ((end - start) / budget));
+        }
+        nextRunNanos = next;
+    }
+
+    private void publishDiagnostics() {
+        if (diagnostics != null) {
+            diagnostics.publishIfDue(source, this);
+        }
+    }
+
+    /**
+     * Run the pipeline on every frame until stop() is called. Exceptions from
+     * the pipeline or listener drop that frame and are logged at most once a
+     * second.
+     */
+    public void runForever() {
+        while (enabled) {
+            try {
+                runOnce();
+            } catch (InterruptedException ex) {
+                return;
+            } catch (RuntimeException ex) {
+                errors++;
+                long now = System.nanoTime();
+                if (errors == 1 || now - lastErrorLog >= ERROR_LOG_NANOS) {
+                    lastErrorLog = now;
+                    System.err.println("pipeline error on '" + source.getName() + "' (" + errors + " so far): " + ex);
+                    ex.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop a runForever() loop.
+     */
+    public void stop() {
+        enabled = false;
+    }
+
+    /** Frames skipped by the rate cap or CPU budget. */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /** Frames dropped because they were past the deadline when taken. */
+    public long getStale() {
+        return stale;
+    }
+
+    /** Frames whose result was published after the deadline. */
+    public long getMissed() {
+        return missed;
+    }
+
+    /** Frames that failed with an exception. */
+    public long getErrors() {
+        return errors;
+    }
+}
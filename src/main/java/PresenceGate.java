@@ -0,0 +1,130 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+
+/**
+ * Decides from a cheap orange coverage estimate whether a frame is worth the
+ * full detection pipeline, so frames with no orange in view cost a subsampled
+ * threshold instead of segmentation, morphology and contours.
+ *
+ * <p>
+ * The gate opens as soon as coverage reaches the open level or the last frame
+ * had a note. It only closes once coverage has stayed under half the open
+ * level for several frames in a row, so a note at the edge of detection does
+ * not flicker the full pipeline on and off. While closed, every few frames
+ * still run in full, in case a small or distant note falls between the
+ * sampled pixels. The fraction of frames skipped is published per window.
+ *
+ * <p>
+ * Used only from the detection thread.
+ */
+public final class PresenceGate {
+    /* Frames per published skip rate */
+    private static final int WINDOW = 30;
+
+    /* Frames in a row under the close level before closing */
+    private static final int CLOSE_FRAMES = 5;
+
+    /* Frames between full runs while closed */
+    private static final int PROBE_FRAMES = 15;
+
+    private final double openCoverage;
+    private final double closeCoverage;
+    private final int step;
+    private boolean open = true;
+    private int emptyFrames;
+    private int sinceProbe;
+    private int frames;
+    private int windowSkipped;
+    private long skipped;
+
+    private final DoublePublisher skipRatePub;
+    private final IntegerPublisher skippedPub;
+
+    /**
+     * Create a gate that starts open.
+     *
+     * @param table    camera subtable to publish GateSkipRate and GateSkipped in,
+     *                 or null to publish nothing, as in the offline check tools
+     * @param coverage fraction of sampled pixels that must be orange to open
+     * @param step     pixels between samples in each direction
+     */
+    public PresenceGate(NetworkTable table, double coverage, int step) {
+        if (coverage <= 0 || coverage >= 1) {
+            throw new IllegalArgumentException("presence gate coverage must be above 0 and below 1, got "
+                    + coverage);
+        }
+        if (step < 1) {
+            throw new IllegalArgumentException("presence gate step must be at least 1, got " + step);
+        }
+        openCoverage = coverage;
+        closeCoverage = coverage / 2;
+        this.step = step;
+
+        if (table != null) {
+            skipRatePub = table.getDoubleTopic("GateSkipRate").publish();
+            skippedPub = table.getIntegerTopic("GateSkipped").publish();
+            skipRatePub.set(0);
+            skippedPub.set(0);
+        } else {
+            skipRatePub = null;
+            skippedPub = null;
+        }
+    }
+
+    /**
+     * Pixels between samples in each direction.
+     */
+    public int getStep() {
+        return step;
+    }
+
+    /**
+     * Decide whether a frame runs the full pipeline.
+     *
+     * @param coverage fraction of the frame's sampled pixels that are orange
+     * @param found    whether the previous frame had a note
+     * @return false to skip the frame as empty
+     */
+    public boolean admit(double coverage, boolean found) {
+        if (found || coverage >= openCoverage) {
+            open = true;
+            emptyFrames = 0;
+        } else if (coverage >= closeCoverage) {
+            emptyFrames = 0;
+        } else if (open && ++emptyFrames >= CLOSE_FRAMES) {
+            open = false;
+        }
+
+        boolean run = open || ++sinceProbe >= PROBE_FRAMES;
+        if (run) {
+            sinceProbe = 0;
+        } else {
+            windowSkipped++;
+            skipped++;
+        }
+
+        if (++frames == WINDOW) {
+            if (skipRatePub != null) {
+                skipRatePub.set((double) windowSkipped / WINDOW);
+                skippedPub.set(skipped);
+            }
+            frames = 0;
+            windowSkipped = 0;
+        }
+        return run;
+    }
+
+    /**
+     * Open the gate, as after a restart.
+     */
+    public void reset() {
+        open = true;
+        emptyFrames = 0;
+        sinceProbe = 0;
+    }
+}
@@ -0,0 +1,94 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import edu.wpi.first.cscore.VideoMode.PixelFormat;
+import edu.wpi.first.cscore.VideoSource;
+import edu.wpi.first.cscore.raw.RawFrame;
+import edu.wpi.first.cscore.raw.RawSink;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * Frame grabber that takes YUYV or grayscale frames straight from the camera
+ * through a RawSink, so no MJPEG decode or BGR conversion happens. The camera
+ * must be set to the same pixel format for cscore to pass frames through
+ * unconverted.
+ *
+ * <p>
+ * YUYV frames are handed out as width/2 x height, 4-channel Mats where each
+ * element is one Y0 U Y1 V macropixel. Grayscale frames are 1-channel Mats.
+ */
+public class RawFrameGrabber extends FrameGrabber {
+    /**
+     * RawSink with its grab method opened up.
+     */
+    private static class Sink extends RawSink {
+        Sink(String name) {
+            super(name);
+        }
+
+        long grab(RawFrame frame, double timeout) {
+            return grabFrame(frame, timeout);
+        }
+    }
+
+    private final PixelFormat format;
+    private final int width;
+    private final int height;
+    private final RawFrame rawFrame = new RawFrame();
+
+    /* Header over the raw frame's native buffer, rebuilt when the buffer moves */
+    private Mat wrapped = new Mat();
+    private long wrappedData;
+
+    /**
+     * Create a raw grabber. Call start() to begin grabbing.
+     *
+     * @param format kYUYV or kGray
+     */
+    public RawFrameGrabber(String name, VideoSource source, PixelFormat format, int width, int height) {
+        super(name, source, new Sink("rawgrabber_" + name));
+        if (format != PixelFormat.kYUYV && format != PixelFormat.kGray) {
+            throw new IllegalArgumentException("raw grabber supports YUYV and gray, not " + format);
+        }
+        this.format = format;
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    public PixelFormat getPixelFormat() {
+        return format;
+    }
+
+    @Override
+    protected long grab(Mat mat, double timeout) {
+        rawFrame.setWidth(width);
+        rawFrame.setHeight(height);
+        rawFrame.setPixelFormat(format.getValue());
+        long time = ((Sink) sink).grab(rawFrame, timeout);
+        if (time == 0) {
+            return 0;
+        }
+
+        int rows = rawFrame.getHeight();
+        int cols = format == PixelFormat.kYUYV ? rawFrame.getWidth() / 2 : rawFrame.getWidth();
+        int type = format == PixelFormat.kYUYV ? CvType.CV_8UC4 : CvType.CV_8UC1;
+        if (rawFrame.getDataPtr() != wrappedData || wrapped.rows() != rows || wrapped.cols() != cols) {
+            wrapped.release();
+            wrapped = new Mat(rows, cols, type, rawFrame.getDataByteBuffer());
+            wrappedData = rawFrame.getDataPtr();
+        }
+        wrapped.copyTo(mat);
+        return time;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        wrapped.release();
+        rawFrame.close();
+    }
+}
@@ -0,0 +1,200 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import edu.wpi.first.cscore.CvSource;
+import edu.wpi.first.cscore.VideoMode.PixelFormat;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Stand-in camera that plays back a {@link FrameRecorder} file. Selected with
+ * "source": "replay" in a camera's frc.json entry, with "path" naming the
+ * recording.
+ *
+ * <p>
+ * At recorded speed frames are spaced by their original capture times. At
+ * maximum speed each frame is put as soon as the consumer has taken the
+ * previous one, so every frame is processed exactly once and in order, and
+ * the reported rate is the pipeline's own throughput. YUYV recordings are
+ * converted to BGR, since cscore cannot convert back to YUYV for a raw sink.
+ */
+public class ReplaySource extends CvSource {
+    /**
+     * A recording file mapped for reading.
+     */
+    private static final class Recording {
+        final MappedByteBuffer buffer;
+        final PixelFormat format;
+        final long frames;
+        final int rows;
+        final int cols;
+
+        Recording(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.capacity() < FrameRecorder.HEADER_SIZE || buffer.getInt(0) != FrameRecorder.MAGIC) {
+                throw new IOException(path + " is not a frame recording");
+            }
+            if (buffer.getInt(4) != FrameRecorder.VERSION) {
+                throw new IOException(path + " has unsupported version " + buffer.getInt(4));
+            }
+            format = pixelFormat(buffer.getInt(8));
+            frames = buffer.getLong(FrameRecorder.COUNT_OFFSET);
+            if (frames == 0) {
+                throw new IOException(path + " has no frames");
+            }
+            rows = buffer.getInt(FrameRecorder.HEADER_SIZE + 16);
+            int firstCols = buffer.getInt(FrameRecorder.HEADER_SIZE + 20);
+            cols = format == PixelFormat.kYUYV ? firstCols * 2 : firstCols;
+        }
+
+        private static PixelFormat pixelFormat(int value) {
+            for (PixelFormat format : PixelFormat.values()) {
+                if (format.getValue() == value) {
+                    return format;
+                }
+            }
+            return PixelFormat.kUnknown;
+        }
+    }
+
+    /* Seconds to wait for a paced frame to be grabbed before putting it again */
+    private static final double REPUT_TIMEOUT = 0.1;
+    private static final double STALL_TIMEOUT = 1.0;
+
+    private final Path path;
+    private final Recording recording;
+    private final boolean maxSpeed;
+    private final boolean loop;
+    private volatile FrameGrabber pacer;
+
+    /**
+     * Open a recording and start playing it.
+     *
+     * @param maxSpeed play as fast as the consumer keeps up rather than at
+     *                 recorded speed
+     * @param loop     start over at the end of the recording
+     */
+    public ReplaySource(String name, Path path, boolean maxSpeed, boolean loop) throws IOException {
+        this(name, path, new Recording(path), maxSpeed, loop);
+    }
+
+    private ReplaySource(String name, Path path, Recording recording, boolean maxSpeed, boolean loop) {
+        super(name, PixelFormat.kBGR, recording.cols, recording.rows, 30);
+        this.path = path;
+        this.recording = recording;
+        this.maxSpeed = maxSpeed;
+        this.loop = loop;
+
+        Thread thread = new Thread(this::run, "Replay-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Frame width of the recording. */
+    public int getWidth() {
+        return recording.cols;
+    }
+
+    /** Frame height of the recording. */
+    public int getHeight() {
+        return recording.rows;
+    }
+
+    /**
+     * At maximum speed, wait for this grabber's consumer to take each frame
+     * before putting the next. Without one, maximum speed puts frames as fast as
+     * they can be read and the consumer sees only some of them.
+     */
+    public void setPacer(FrameGrabber grabber) {
+        pacer = grabber;
+    }
+
+    private void run() {
+        MappedByteBuffer buffer = recording.buffer;
+        Mat converted = new Mat();
+
+        do {
+            int position = FrameRecorder.HEADER_SIZE;
+            long firstCapture = 0;
+            long start = System.nanoTime();
+            long frames = 0;
+            for (; frames < recording.frames; frames++) {
+                long captureTime = buffer.getLong(position);
+                int rows = buffer.getInt(position + 16);
+                int cols = buffer.getInt(position + 20);
+                int type = buffer.getInt(position + 24);
+                int length = buffer.getInt(position + 28);
+                Mat view = new Mat(rows, cols, type,
+                        buffer.slice(position + FrameRecorder.FRAME_HEADER_SIZE, length));
+                position += FrameRecorder.FRAME_HEADER_SIZE + length;
+
+                try {
+                    if (frames == 0) {
+                        firstCapture = captureTime;
+                    } else if (!maxSpeed) {
+                        long due = start + (captureTime - firstCapture) * 1000;
+                        long wait = due - System.nanoTime();
+                        if (wait > 0) {
+                            Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                        }
+                    }
+
+                    Mat frame = view;
+                    if (recording.format == PixelFormat.kYUYV && type == CvType.CV_8UC4) {
+                        Mat packed = view.reshape(2);
+                        Imgproc.cvtColor(packed, converted, Imgproc.COLOR_YUV2BGR_YUYV);
+                        packed.release();
+                        frame = converted;
+                    }
+                    put(frame);
+                } catch (InterruptedException ex) {
+                    converted.release();
+                    return;
+                } finally {
+                    view.release();
+                }
+            }
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Replayed %d frames from '%s' in %.2f s (%.1f fps)%n",
+                    frames, path, seconds, frames / seconds);
+        } while (loop);
+
+        converted.release();
+    }
+
+    /**
+     * Put a frame, and at maximum speed wait until the pacing grabber's consumer
+     * has it. A sink only wakes for frames put while it is waiting, so a frame
+     * put while the grab thread is busy is missed; put it again if it is not
+     * grabbed promptly.
+     */
+    private void put(Mat frame) throws InterruptedException {
+        FrameGrabber grabber = maxSpeed ? pacer : null;
+        if (grabber == null) {
+            putFrame(frame);
+            return;
+        }
+
+        long before = grabber.getGrabbed();
+        do {
+            putFrame(frame);
+        } while (!grabber.awaitGrabbed(before, REPUT_TIMEOUT));
+        if (!grabber.awaitTaken(before + 1, STALL_TIMEOUT)) {
+            System.out.println("Replay '" + getName() + "': consumer stalled");
+        }
+    }
+}
@@ -0,0 +1,136 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import java.util.Arrays;
+
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.util.WPIUtilJNI;
+
+/**
+ * Picks the processing scale for one camera's detector from its measured
+ * per-frame processing time, so detection keeps as much resolution, and so
+ * range, as the latency target allows.
+ *
+ * <p>
+ * Processing times are collected over a window of frames. If the window's
+ * 95th percentile is over the target, the next smaller scale is used from the
+ * next frame. Stepping back up is predicted from the pixel count: time grows
+ * with the square of the scale, and the larger scale is only used once that
+ * prediction has stayed under the target with headroom for several windows in
+ * a row. Every transition is logged and published, stamped with the time it
+ * happened, so it can be matched against match logs.
+ *
+ * <p>
+ * Used only from the detection thread.
+ */
+public final class ScaleController {
+    /* Frames per decision window */
+    private static final int WINDOW = 30;
+
+    /* Calm windows in a row before stepping up */
+    private static final int STEP_UP_WINDOWS = 3;
+
+    /* Fraction of the target a larger scale must be predicted to stay under */
+    private static final double HEADROOM = 0.8;
+
+    private final String name;
+    private final double[] levels;
+    private final long targetNanos;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private int level;
+    private int frames;
+    private int calmWindows;
+    private long transitions;
+
+    private final DoublePublisher scalePub;
+    private final IntegerPublisher transitionsPub;
+
+    /**
+     * Create a controller that starts at the largest scale.
+     *
+     * @param name          camera name for log messages
+     * @param table         camera subtable to publish ProcessingScale and
+     *                      ScaleTransitions in
+     * @param levels        allowed scales, each above 0 and at most 1
+     * @param targetSeconds processing time to stay under
+     */
+    public ScaleController(String name, NetworkTable table, double[] levels, double targetSeconds) {
+        if (levels.length == 0) {
+            throw new IllegalArgumentException("need at least one processing scale");
+        }
+        for (double level : levels) {
+            if (level <= 0 || level > 1) {
+                throw new IllegalArgumentException("processing scale must be above 0 and at most 1, got " + level);
+            }
+        }
+        this.name = name;
+        this.levels = levels.clone();
+        Arrays.sort(this.levels);
+        reverse(this.levels);
+        targetNanos = (long) (targetSeconds * 1e9);
+
+        scalePub = table.getDoubleTopic("ProcessingScale").publish();
+        transitionsPub = table.getIntegerTopic("ScaleTransitions").publish();
+        scalePub.set(this.levels[0]);
+        transitionsPub.set(0);
+    }
+
+    /**
+     * Scale to process the next frame at.
+     */
+    public double getScale() {
+        return levels[level];
+    }
+
+    /**
+     * Record how long a frame took to process, and change the scale if a window
+     * just ended and called for it.
+     */
+    public void record(long nanos) {
+        histogram.record(nanos);
+        if (++frames < WINDOW) {
+            return;
+        }
+        long p95 = histogram.getPercentile(95);
+        histogram.reset();
+        frames = 0;
+
+        if (p95 > targetNanos) {
+            calmWindows = 0;
+            if (level < levels.length - 1) {
+                change(level + 1, p95);
+            }
+        } else if (level > 0) {
+            double ratio = levels[level - 1] / levels[level];
+            if (p95 * ratio * ratio < targetNanos * HEADROOM) {
+                if (++calmWindows >= STEP_UP_WINDOWS) {
+                    calmWindows = 0;
+                    change(level - 1, p95);
+                }
+            } else {
+                calmWindows = 0;
+            }
+        }
+    }
+
+    private void change(int newLevel, long p95) {
+        System.out.printf("Camera '%s' processing scale %.3g -> %.3g (p95 %.1f ms, target %.1f ms)%n", name,
+                levels[level], levels[newLevel], p95 / 1e6, targetNanos / 1e6);
+        level = newLevel;
+        transitions++;
+        long now = WPIUtilJNI.now();
+        scalePub.set(levels[level], now);
+        transitionsPub.set(transitions, now);
+    }
+
+    private static void reverse(double[] values) {
+        for (int i = 0, j = values.length - 1; i < j; i++, j--) {
+            double swap = values[i];
+            values[i] = values[j];
+            values[j] = swap;
+        }
+    }
+}
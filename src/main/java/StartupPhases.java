@@ -0,0 +1,86 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTable;
+
+/**
+ * Times the startup sequence and publishes it to a NetworkTables subtable, so
+ * time from power-on to the first note pose can be measured on the robot.
+ *
+ * <p>
+ * Phases run back to back on the main thread and are published as their
+ * duration in milliseconds. Milestones that happen on other threads, like the
+ * NetworkTables connection or a camera's first pose, are published as
+ * milliseconds since the JVM launched. Values set before NetworkTables
+ * connects are sent once it does.
+ */
+public final class StartupPhases {
+    private final NetworkTable table;
+    private final List<DoublePublisher> publishers = new CopyOnWriteArrayList<>();
+    private final Set<String> reached = ConcurrentHashMap.newKeySet();
+    private long phaseStart = System.nanoTime();
+
+    /**
+     * Start timing; the first phase begins now. Publishes how long the JVM took
+     * to reach this point as Launch.
+     */
+    public StartupPhases(NetworkTable table) {
+        this.table = table;
+        publish("Launch", sinceLaunch());
+    }
+
+    /**
+     * End the current phase and begin the next one.
+     */
+    public synchronized void endPhase(String name) {
+        long now = System.nanoTime();
+        double millis = (now - phaseStart) / 1e6;
+        phaseStart = now;
+        System.out.printf("Startup: %s took %.1f ms%n", name, millis);
+        publish(name, millis);
+    }
+
+    /**
+     * Record a duration measured elsewhere, such as one camera's warm-up.
+     */
+    public void record(String name, double millis) {
+        System.out.printf("Startup: %s took %.1f ms%n", name, millis);
+        publish(name, millis);
+    }
+
+    /**
+     * Record the first time a milestone is reached; later calls are ignored.
+     */
+    public void reach(String name) {
+        if (reached.add(name)) {
+            double millis = sinceLaunch();
+            System.out.printf("Startup: %s at %.1f ms%n", name, millis);
+            publish(name, millis);
+        }
+    }
+
+    /**
+     * Whether a milestone has been reached, so hot paths can skip reach().
+     */
+    public boolean hasReached(String name) {
+        return reached.contains(name);
+    }
+
+    private void publish(String name, double millis) {
+        DoublePublisher pub = table.getDoubleTopic(name).publish();
+        pub.set(millis);
+        publishers.add(pub);
+    }
+
+    private static double sinceLaunch() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+}
@@ -0,0 +1,191 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+/**
+ * Runs a row-local image operation on horizontal stripes of a frame in
+ * parallel on a fork-join pool, and stitches the stripes back into one Mat.
+ *
+ * <p>
+ * Each stripe is processed together with a halo of neighbouring rows above
+ * and below, then only its own rows are copied out. Thresholding is per pixel
+ * and an erode followed by a dilate with a k x k kernel reads k / 2 rows each
+ * way per pass, so a halo of 2 * (k / 2) rows makes every output row identical
+ * to processing the whole frame at once; stripe edges that are frame edges get
+ * OpenCV's usual border handling either way. Each stripe works in its own
+ * DetectionWorkspace, owned by the segmenter rather than by whichever pool
+ * thread runs it, so workers the pool retires or replaces leave no Mats behind
+ * and close() frees them all. The stripe tasks are reused, so a frame
+ * allocates nothing once every stripe has run.
+ */
+public final class StripeSegmenter implements AutoCloseable {
+    /**
+     * Operation applied to each stripe.
+     */
+    @FunctionalInterface
+    public interface Stage {
+        /**
+         * Process an input stripe, halo included, on a worker thread.
+         *
+         * @param outputWidth width of the result in pixels
+         * @return a Mat with the same rows as the input, valid until the
+         *         stripe's workspace is released
+         */
+        Mat apply(Mat input, int outputWidth, DetectionWorkspace ws);
+    }
+
+    /* Fewest output rows per stripe worth the fork and copy overhead */
+    private static final int MIN_STRIPE_ROWS = 16;
+
+    private final ForkJoinPool pool;
+    private final Stripe[] stripes;
+    private final DetectionWorkspace[] workspaces;
+    private final RecursiveAction root;
+
+    /* Set for each run before the tasks are forked */
+    private Mat input;
+    private Mat output;
+    private int outputWidth;
+    private int halo;
+    private Stage stage;
+
+    /**
+     * Create a segmenter with its own pool.
+     *
+     * @param threads stripes per frame and worker threads
+     * @param name    prefix for worker thread names
+     */
+    public StripeSegmenter(int threads, String name) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("need at least one segmentation thread, got " + threads);
+        }
+        pool = new ForkJoinPool(threads, p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName(name + "-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+
+        stripes = new Stripe[threads];
+        workspaces = new DetectionWorkspace[threads];
+        for (int i = 0; i < threads; i++) {
+            stripes[i] = new Stripe(i);
+            workspaces[i] = new DetectionWorkspace();
+        }
+        root = new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(stripes);
+            }
+        };
+    }
+
+    public int getThreads() {
+        return stripes.length;
+    }
+
+    /**
+     * Whether a frame is tall enough to be worth splitting.
+     */
+    public boolean covers(int rows) {
+        return rows >= stripes.length * MIN_STRIPE_ROWS;
+    }
+
+    /**
+     * Process a frame in stripes and wait for all of them.
+     *
+     * @param input       the frame, or a full-width region of it
+     * @param output      receives the stitched result, created as 8-bit
+     *                    single channel with the input's rows
+     * @param outputWidth width of the result in pixels
+     * @param halo        extra rows each stripe reads on each side
+     */
+    public void run(Mat input, Mat output, int outputWidth, int halo, Stage stage) {
+        output.create(input.rows(), outputWidth, CvType.CV_8UC1);
+        this.input = input;
+        this.output = output;
+        this.outputWidth = outputWidth;
+        this.halo = halo;
+        this.stage = stage;
+        try {
+            root.reinitialize();
+            for (Stripe stripe : stripes) {
+                stripe.reinitialize();
+            }
+            pool.invoke(root);
+        } finally {
+            this.input = null;
+            this.output = null;
+            this.stage = null;
+        }
+    }
+
+    /**
+     * Stop the worker threads and free the stripes' workspaces. Call from the
+     * thread that calls run(), so no stripe is in flight.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+        try {
+            pool.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        for (DetectionWorkspace ws : workspaces) {
+            ws.free();
+        }
+    }
+
+    // Fork-join tasks are Serializable only by inheritance; stripes are never
+    // serialized
+    @SuppressWarnings("serial")
+    private final class Stripe extends RecursiveAction {
+        private final int index;
+        private final Rect source = new Rect();
+        private final Rect rows = new Rect();
+        private final Rect target = new Rect();
+
+        Stripe(int index) {
+            this.index = index;
+        }
+
+        @Override
+        protected void compute() {
+            int total = input.rows();
+            int top = total * index / stripes.length;
+            int bottom = total * (index + 1) / stripes.length;
+            int from = Math.max(0, top - halo);
+            int to = Math.min(total, bottom + halo);
+
+            source.x = 0;
+            source.y = from;
+            source.width = input.cols();
+            source.height = to - from;
+            rows.x = 0;
+            rows.y = top - from;
+            rows.width = outputWidth;
+            rows.height = bottom - top;
+            target.x = 0;
+            target.y = top;
+            target.width = outputWidth;
+            target.height = bottom - top;
+
+            DetectionWorkspace ws = workspaces[index];
+            try {
+                Mat result = stage.apply(ws.view(input, source), outputWidth, ws);
+                ws.view(result, rows).copyTo(ws.view(output, target));
+            } finally {
+                ws.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import edu.wpi.first.cscore.CvSource;
+import edu.wpi.first.cscore.VideoMode.PixelFormat;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Stand-in camera that draws an orange note sweeping across a grey background.
+ * Selected with "source": "test" in a camera's frc.json entry so the capture
+ * and detection code can run without a USB camera.
+ */
+public class TestPatternSource extends CvSource {
+    private static final Scalar BACKGROUND = new Scalar(60, 60, 60);
+    private static final Scalar ORANGE = new Scalar(0, 110, 255);
+
+    private final int width;
+    private final int height;
+    private final int fps;
+
+    /**
+     * Create the source and start drawing frames.
+     */
+    public TestPatternSource(String name, int width, int height, int fps) {
+        super(name, PixelFormat.kBGR, width, height, fps);
+        this.width = width;
+        this.height = height;
+        this.fps = fps;
+
+        Thread thread = new Thread(this::run, "TestPattern-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Draw the test pattern into a BGR frame with the note centred at a
+     * fraction of the frame width. The note is a flat band, as a note lying on
+     * the floor looks edge-on from a low camera, so its outline is the
+     * four-cornered shape the single-note contour path accepts and every
+     * detection mode finds it.
+     */
+    public static void render(Mat frame, double position) {
+        int width = frame.cols();
+        int height = frame.rows();
+        frame.setTo(BACKGROUND);
+        Point center = new Point(width * position, height * 0.65);
+        Imgproc.rectangle(frame, new Point(center.x - width / 8.0, center.y - height / 24.0),
+                new Point(center.x + width / 8.0, center.y + height / 24.0), ORANGE, Imgproc.FILLED);
+    }
+
+    private void run() {
+        Mat frame = new Mat(height, width, CvType.CV_8UC3);
+        long period = 1000 / Math.max(1, fps);
+
+        for (int tick = 0;; tick++) {
+            render(frame, 0.5 + 0.35 * Math.sin(tick * 0.05));
+            putFrame(frame);
+            try {
+                Thread.sleep(period);
+            } catch (InterruptedException ex) {
+                frame.release();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import java.io.IOException;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Pins threads to CPU cores and lowers their priority on Linux using taskset
+ * and renice.
+ */
+public final class ThreadAffinity {
+    private ThreadAffinity() {
+    }
+
+    /**
+     * Pin the calling thread to a single core.
+     *
+     * @return true if taskset succeeded
+     */
+    public static boolean pinCurrentThread(int core) {
+        try {
+            Process process = new ProcessBuilder("taskset", "-p", "-c", Integer.toString(core), currentTid())
+                    .redirectOutput(Redirect.DISCARD)
+                    .redirectError(Redirect.INHERIT)
+                    .start();
+            if (process.waitFor() != 0) {
+                System.err.println("could not pin " + Thread.currentThread().getName() + " to core " + core);
+                return false;
+            }
+            System.out.println("Pinned " + Thread.currentThread().getName() + " to core " + core);
+            return true;
+        } catch (IOException ex) {
+            System.err.println("could not pin " + Thread.currentThread().getName() + ": " + ex);
+            return false;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Set the calling thread's niceness. Java thread priorities are ignored on
+     * Linux, but niceness is per thread, so this lowers one thread without
+     * touching the rest of the process. Raising priority needs root.
+     *
+     * @return true if renice succeeded
+     */
+    public static boolean setCurrentThreadNice(int nice) {
+        try {
+            Process process = new ProcessBuilder("renice", "-n", Integer.toString(nice), "-p", currentTid())
+                    .redirectOutput(Redirect.DISCARD)
+                    .redirectError(Redirect.INHERIT)
+                    .start();
+            if (process.waitFor() != 0) {
+                System.err.println("could not renice " + Thread.currentThread().getName() + " to " + nice);
+                return false;
+            }
+            return true;
+        } catch (IOException ex) {
+            System.err.println("could not renice " + Thread.currentThread().getName() + ": " + ex);
+            return false;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static String currentTid() throws IOException {
+        // /proc/thread-self links to <pid>/task/<tid>
+        return Files.readSymbolicLink(Paths.get("/proc/thread-self")).getFileName().toString();
+    }
+}
@@ -0,0 +1,186 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Side-by-side check of ColorLut against cvtColor + inRange.
+ *
+ * <p>
+ * Classifies every 8-bit BGR colour both ways and reports how many differ,
+ * then times both paths on a random frame. It also times the same table
+ * looked up entirely in OpenCV, with Core.LUT quantising each channel,
+ * Core.transform packing the cell coordinates and remap gathering from the
+ * table laid out as an image, to show whether a native lookup would pay off.
+ * On an x86-64 desktop at 640x480 neither lookup beats cvtColor + inRange.
+ *
+ * <pre>
+ * ./gradlew colorLutCheck -PtoolArgs="[bits] [width] [height] [iterations]"
+ * </pre>
+ */
+public final class ColorLutCheck {
+    private ColorLutCheck() {
+    }
+
+    /**
+     * Main.
+     */
+    public static void main(String... args) {
+        int bits = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+        int width = args.length > 1 ? Integer.parseInt(args[1]) : 640;
+        int height = args.length > 2 ? Integer.parseInt(args[2]) : 480;
+        int iterations = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+
+        OpenCvLoader.load();
+        DetectionWorkspace ws = DetectionWorkspace.current();
+
+        long buildStart = System.nanoTime();
+        ColorLut lut = new ColorLut(bits, NoteDetector.LOWER_ORANGE, NoteDetector.UPPER_ORANGE);
+        System.out.printf("built %d-bit table in %.1f ms%n", bits, (System.nanoTime() - buildStart) / 1e6);
+
+        // Equivalence over the whole colour cube, one blue slice at a time
+        Mat slice = new Mat(256, 256, CvType.CV_8UC3);
+        Mat expected = new Mat();
+        Mat actual = new Mat();
+        Mat diff = new Mat();
+        byte[] cells = new byte[256 * 256 * 3];
+        long mismatches = 0;
+        for (int b = 0; b < 256; b++) {
+            int i = 0;
+            for (int g = 0; g < 256; g++) {
+                for (int r = 0; r < 256; r++) {
+                    cells[i++] = (byte) b;
+                    cells[i++] = (byte) g;
+                    cells[i++] = (byte) r;
+                }
+            }
+            slice.put(0, 0, cells);
+            threshold(slice, ws.hsv, expected);
+            lut.apply(slice, actual, ws);
+            Core.compare(expected, actual, diff, Core.CMP_NE);
+            mismatches += Core.countNonZero(diff);
+        }
+        System.out.printf("colour cube: %d of %d colours differ (%.4f%%)%n",
+                mismatches, 1 << 24, mismatches * 100.0 / (1 << 24));
+
+        // Throughput on a random frame
+        Mat frame = new Mat(height, width, CvType.CV_8UC3);
+        Core.randu(frame, 0, 256);
+        threshold(frame, ws.hsv, expected);
+        lut.apply(frame, actual, ws);
+        Core.compare(expected, actual, diff, Core.CMP_NE);
+        System.out.printf("random %dx%d frame: %d pixels differ%n", width, height, Core.countNonZero(diff));
+
+        for (int warmup = 0; warmup < iterations; warmup++) {
+            threshold(frame, ws.hsv, expected);
+            lut.apply(frame, actual, ws);
+        }
+
+        long start = System.nanoTime();
+        for (int n = 0; n < iterations; n++) {
+            threshold(frame, ws.hsv, expected);
+        }
+        double hsvMs = (System.nanoTime() - start) / 1e6 / iterations;
+
+        start = System.nanoTime();
+        for (int n = 0; n < iterations; n++) {
+            lut.apply(frame, actual, ws);
+        }
+        double lutMs = (System.nanoTime() - start) / 1e6 / iterations;
+
+        double megapixels = width * height / 1e6;
+        System.out.printf("cvtColor + inRange: %.3f ms/frame (%.1f Mpix/s)%n", hsvMs, megapixels / hsvMs * 1e3);
+        System.out.printf("ColorLut:           %.3f ms/frame (%.1f Mpix/s), %.2fx cvtColor + inRange%n", lutMs,
+                megapixels / lutMs * 1e3, lutMs / hsvMs);
+        nativeLookup(bits, frame, actual, diff, iterations, hsvMs);
+
+        slice.release();
+        expected.release();
+        actual.release();
+        diff.release();
+        frame.release();
+    }
+
+    /**
+     * Time the table looked up in OpenCV: each cell's class in an image with
+     * one row per blue level and green-major, red-minor columns, gathered by
+     * remap from coordinates built with Core.LUT and Core.transform.
+     *
+     * @param expected ColorLut's mask for the frame
+     */
+    private static void nativeLookup(int bits, Mat frame, Mat expected, Mat diff, int iterations,
+            double hsvMs) {
+        int levels = 1 << bits;
+        if ((long) levels * levels > Short.MAX_VALUE) {
+            System.out.println("Core.LUT + remap:   not possible at " + bits + " bits; the table is wider than"
+                    + " remap allows");
+            return;
+        }
+        int shift = 8 - bits;
+        int half = (1 << shift) >> 1;
+
+        byte[] cells = new byte[levels * levels * levels * 3];
+        int i = 0;
+        for (int b = 0; b < levels; b++) {
+            for (int g = 0; g < levels; g++) {
+                for (int r = 0; r < levels; r++) {
+                    cells[i++] = (byte) ((b << shift) | half);
+                    cells[i++] = (byte) ((g << shift) | half);
+                    cells[i++] = (byte) ((r << shift) | half);
+                }
+            }
+        }
+        Mat centres = new Mat(levels, levels * levels, CvType.CV_8UC3);
+        centres.put(0, 0, cells);
+        Mat hsv = new Mat();
+        Mat table = new Mat();
+        threshold(centres, hsv, table);
+
+        // Per channel: blue gives the row, green and red sum to the column
+        short[] steps = new short[256 * 3];
+        for (int v = 0; v < 256; v++) {
+            steps[v * 3] = (short) (v >> shift);
+            steps[v * 3 + 1] = (short) ((v >> shift) << bits);
+            steps[v * 3 + 2] = (short) (v >> shift);
+        }
+        Mat quantise = new Mat(1, 256, CvType.CV_16SC3);
+        quantise.put(0, 0, steps);
+        Mat pack = new Mat(2, 3, CvType.CV_32F);
+        pack.put(0, 0, 0, 1, 1, 1, 0, 0);
+
+        Mat quantised = new Mat();
+        Mat coordinates = new Mat();
+        Mat noMap = new Mat();
+        Mat mask = new Mat();
+        Runnable lookup = () -> {
+            Core.LUT(frame, quantise, quantised);
+            Core.transform(quantised, coordinates, pack);
+            Imgproc.remap(table, mask, coordinates, noMap, Imgproc.INTER_NEAREST);
+        };
+        for (int n = 0; n < iterations; n++) {
+            lookup.run();
+        }
+        long start = System.nanoTime();
+        for (int n = 0; n < iterations; n++) {
+            lookup.run();
+        }
+        double nativeMs = (System.nanoTime() - start) / 1e6 / iterations;
+        Core.compare(expected, mask, diff, Core.CMP_NE);
+        System.out.printf("Core.LUT + remap:   %.3f ms/frame (%.1f Mpix/s), %.2fx cvtColor + inRange, %d pixels"
+                + " differ from ColorLut%n", nativeMs, frame.total() / 1e3 / nativeMs, nativeMs / hsvMs,
+                Core.countNonZero(diff));
+
+        for (Mat mat : new Mat[] { centres, hsv, table, quantise, pack, quantised, coordinates, noMap, mask }) {
+            mat.release();
+        }
+    }
+
+    private static void threshold(Mat bgr, Mat hsv, Mat mask) {
+        Imgproc.cvtColor(bgr, hsv, Imgproc.COLOR_BGR2HSV);
+        Core.inRange(hsv, NoteDetector.LOWER_ORANGE, NoteDetector.UPPER_ORANGE, mask);
+    }
+}
@@ -0,0 +1,180 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import edu.wpi.first.cscore.VideoMode.PixelFormat;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Compares note detection on YUYV frames against the BGR path and reports
+ * per-format CPU time and latency.
+ *
+ * <p>
+ * Renders SyntheticScene notes over a grid of distances and angles, packs
+ * each frame to YUYV the way a camera would deliver it, and runs multi-note
+ * detection on the YUYV frame and on its conversion back to BGR. The BGR path
+ * must find a note in every scene, so the comparison is never between two
+ * empty results, and the YUYV thresholds must find the same note within
+ * tolerance. Then it times NoteDetector three ways: MJPEG decoded to BGR, YUYV
+ * converted to BGR (what cscore does for a YUYV camera) and YUYV segmented
+ * directly.
+ *
+ * <pre>
+ * ./gradlew formatCheck -PtoolArgs="[width] [height] [iterations]"
+ * </pre>
+ */
+public final class FormatCheck {
+    /*
+     * Allowed difference between the BGR and YUYV results. YUYV shares chroma
+     * between two pixels, so each edge of the note may move by one macropixel;
+     * on a far note at a low resolution that is more than the fixed fraction.
+     */
+    private static final double DISTANCE_TOLERANCE = 0.05;
+    private static final int EDGE_PIXELS = 2;
+    private static final double ANGLE_TOLERANCE = 0.02;
+
+    private static final double FOV = 0.9564404;
+    private static final double RING_RADIUS = 0.1778;
+    private static final double ELEVATION = 0.257556;
+
+    /* Scene grid in meters and radians */
+    private static final double[] DISTANCES = { 1.0, 1.5, 2.0, 2.5 };
+    private static final double[] ANGLES = { -0.25, 0, 0.25 };
+
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private FormatCheck() {
+    }
+
+    /**
+     * Main.
+     */
+    public static void main(String... args) {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 320;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 240;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        OpenCvLoader.load();
+        NoteDetector bgrDetector = new NoteDetector(null, FOV, RING_RADIUS, ELEVATION);
+        NoteDetector yuyvDetector = new NoteDetector(null, FOV, RING_RADIUS, ELEVATION);
+        bgrDetector.setMultiNote(4);
+        yuyvDetector.setMultiNote(4);
+        yuyvDetector.setInputFormat(PixelFormat.kYUYV);
+        SyntheticScene scene = new SyntheticScene(FOV, ELEVATION, RING_RADIUS);
+
+        Mat rendered = new Mat(height, width, CvType.CV_8UC3);
+        Mat yuyv = new Mat();
+        Mat bgr = new Mat();
+        MatOfByte jpeg = new MatOfByte();
+        boolean pass = true;
+
+        // Equivalence over the scene grid
+        for (double distance : DISTANCES) {
+            for (double angle : ANGLES) {
+                scene.render(rendered, distance, angle);
+                double noteWidth = 2 * Math.atan(RING_RADIUS / distance) * width / FOV;
+                double distanceTolerance = Math.max(DISTANCE_TOLERANCE, 2 * EDGE_PIXELS / noteWidth);
+                toYuyv(rendered, yuyv);
+                Imgproc.cvtColor(yuyv.reshape(2), bgr, Imgproc.COLOR_YUV2BGR_YUYV);
+
+                bgrDetector.process(bgr);
+                yuyvDetector.process(yuyv);
+                double[] expected = bgrDetector.getNotePose();
+                double[] actual = yuyvDetector.getNotePose();
+                String result;
+                if (!bgrDetector.hasNote()) {
+                    result = "NO NOTE on the BGR path";
+                } else if (!yuyvDetector.hasNote()) {
+                    result = "NO NOTE on the YUYV path";
+                } else if (Math.abs(expected[0] - actual[0]) > distanceTolerance * expected[0]
+                        || Math.abs(expected[1] - actual[1]) > ANGLE_TOLERANCE) {
+                    result = "MISMATCH";
+                } else {
+                    result = "ok";
+                }
+                pass &= "ok".equals(result);
+                System.out.printf("%.1f m, %+.2f rad: BGR { %.3f, %.4f } YUYV { %.3f, %.4f } %s%n", distance,
+                        angle, expected[0], expected[1], actual[0], actual[1], result);
+            }
+        }
+
+        // CPU time and latency per format
+        scene.render(rendered, 2.0, 0);
+        toYuyv(rendered, yuyv);
+        Mat packed = yuyv.reshape(2);
+        Imgproc.cvtColor(packed, bgr, Imgproc.COLOR_YUV2BGR_YUYV);
+        Imgcodecs.imencode(".jpg", bgr, jpeg);
+
+        System.out.printf("%dx%d, %d iterations%n", width, height, iterations);
+        for (int round = 0; round < 2; round++) {
+            // The first round only warms up the JIT
+            boolean report = round == 1;
+            time("MJPEG (decode + BGR)", report, iterations, () -> {
+                Mat decoded = Imgcodecs.imdecode(jpeg, Imgcodecs.IMREAD_COLOR);
+                bgrDetector.process(decoded);
+                decoded.release();
+            });
+            time("YUYV -> BGR", report, iterations, () -> {
+                Imgproc.cvtColor(packed, bgr, Imgproc.COLOR_YUV2BGR_YUYV);
+                bgrDetector.process(bgr);
+            });
+            time("YUYV direct", report, iterations, () -> yuyvDetector.process(yuyv));
+        }
+
+        System.out.println(pass ? "YUYV results match BGR within tolerance"
+                : "YUYV results DIFFER from BGR or a scene found no note");
+
+        scene.release();
+        rendered.release();
+        packed.release();
+        yuyv.release();
+        bgr.release();
+        jpeg.release();
+        if (!pass) {
+            System.exit(1);
+        }
+    }
+
+    private static void time(String label, boolean report, int iterations, Runnable step) {
+        long cpuStart = threads.getCurrentThreadCpuTime();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            step.run();
+        }
+        double wallMs = (System.nanoTime() - start) / 1e6 / iterations;
+        double cpuMs = (threads.getCurrentThreadCpuTime() - cpuStart) / 1e6 / iterations;
+        if (report) {
+            System.out.printf("  %-22s %.3f ms latency, %.3f ms CPU per frame%n", label, wallMs, cpuMs);
+        }
+    }
+
+    /**
+     * Pack a BGR image into YUYV macropixels (width/2 x height, 4 channels).
+     */
+    static void toYuyv(Mat bgr, Mat yuyv) {
+        Mat yuv = new Mat();
+        Imgproc.cvtColor(bgr, yuv, Imgproc.COLOR_BGR2YUV);
+        int width = bgr.cols();
+        int height = bgr.rows();
+        byte[] in = new byte[width * height * 3];
+        byte[] out = new byte[width * height * 2];
+        yuv.get(0, 0, in);
+        for (int i = 0, o = 0; i < in.length; i += 6, o += 4) {
+            out[o] = in[i];
+            out[o + 1] = (byte) (((in[i + 1] & 0xff) + (in[i + 4] & 0xff)) / 2);
+            out[o + 2] = in[i + 3];
+            out[o + 3] = (byte) (((in[i + 2] & 0xff) + (in[i + 5] & 0xff)) / 2);
+        }
+        yuyv.create(height, width / 2, CvType.CV_8UC4);
+        yuyv.put(0, 0, out);
+        yuv.release();
+    }
+}
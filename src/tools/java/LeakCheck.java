@@ -0,0 +1,165 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import java.util.function.Consumer;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Checks that every way out of NoteDetector.process() leaves
+ * DetectionWorkspace.liveMats() where it found it.
+ *
+ * <p>
+ * Each case sets up a detector, runs its frames once so every worker thread
+ * has its workspace, then runs them again many times and fails if the count
+ * of live Mats moved. The cases cover a frame with no note, a note found by
+ * the contour path, by the tracking window and by the multi-note path, the
+ * same with striped segmentation, a frame the presence gate skips, and frames
+ * that make OpenCV throw partway through, on the calling thread and on a
+ * stripe worker. Closing a segmenter must free its stripes' workspaces. Cases
+ * that should find a note also fail if they do not, so the found path is
+ * really taken.
+ *
+ * <pre>
+ * ./gradlew leakCheck -PtoolArgs="[rounds]"
+ * </pre>
+ */
+public final class LeakCheck {
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+
+    private static final Scalar ORANGE = new Scalar(0, 110, 255);
+    private static final Scalar GREY = new Scalar(60, 60, 60);
+
+    private LeakCheck() {
+    }
+
+    /**
+     * Main.
+     */
+    public static void main(String... args) {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+
+        OpenCvLoader.load();
+        Mat empty = new Mat(HEIGHT, WIDTH, CvType.CV_8UC3, GREY);
+        Mat note = new Mat(HEIGHT, WIDTH, CvType.CV_8UC3, GREY);
+        Imgproc.rectangle(note, new Point(WIDTH * 0.4, HEIGHT * 0.6), new Point(WIDTH * 0.65, HEIGHT * 0.68),
+                ORANGE, Imgproc.FILLED);
+
+        // 16-bit frames make thresholding throw after the views are taken
+        Mat wrongType = new Mat(HEIGHT, WIDTH, CvType.CV_16UC3, Scalar.all(0));
+
+        boolean pass = true;
+        for (int stripes : new int[] { 1, 3 }) {
+            for (boolean lut : new boolean[] { false, true }) {
+                String prefix = (lut ? "lut" : "hsv") + (stripes > 1 ? ", " + stripes + " stripes" : "") + ": ";
+                pass &= check(prefix + "no note", rounds, detector(lut, stripes), false,
+                        d -> d.process(empty));
+                pass &= check(prefix + "contour note", rounds, detector(lut, stripes), true,
+                        d -> d.process(note));
+                pass &= check(prefix + "multi-note", rounds, multiNote(detector(lut, stripes)), true,
+                        d -> d.process(note));
+
+                NoteDetector tracked = detector(lut, stripes);
+                tracked.setTracking(10, 0.5);
+                pass &= check(prefix + "tracking window", rounds, tracked, true, d -> {
+                    d.process(note);
+                    d.process(note);
+                });
+
+                NoteDetector gated = detector(lut, stripes);
+                gated.setPresenceGate(new PresenceGate(null, 0.01, 8));
+                int[] skipped = new int[1];
+                pass &= check(prefix + "presence gate", rounds, gated, false, d -> {
+                    d.process(empty);
+                    skipped[0] += d.wasGated() ? 1 : 0;
+                });
+                if (skipped[0] == 0) {
+                    System.out.println(prefix + "presence gate never skipped a frame  FAIL");
+                    pass = false;
+                }
+
+                NoteDetector failing = detector(lut, stripes);
+                failing.setTracking(10, 0.5);
+                pass &= check(prefix + "exception in a tracking window", rounds, failing, null, d -> {
+                    d.process(note);
+                    expectFailure(d, wrongType);
+                });
+                pass &= check(prefix + "exception on a full frame", rounds, detector(lut, stripes), null,
+                        d -> expectFailure(d, wrongType));
+            }
+        }
+
+        // Closing a segmenter frees its stripes' workspaces
+        int before = DetectionWorkspace.liveMats();
+        NoteDetector closed = detector(false, 3);
+        closed.process(note);
+        closed.setSegmentationThreads(1, null);
+        int delta = DetectionWorkspace.liveMats() - before;
+        System.out.printf("%-50s %+d live Mats%s%n", "closed segmenter", delta, delta == 0 ? "" : "  FAIL");
+        pass &= delta == 0;
+
+        empty.release();
+        note.release();
+        wrongType.release();
+        System.out.println(pass ? "No Mats leaked on any path" : "Mats LEAKED");
+        if (!pass) {
+            System.exit(1);
+        }
+    }
+
+    private static NoteDetector detector(boolean lut, int stripes) {
+        NoteDetector detector = new NoteDetector(null, 0.9564404, 0.1778, 0.257556);
+        detector.setParams(new DetectionParams(NoteDetector.LOWER_ORANGE, NoteDetector.UPPER_ORANGE, 100, 5,
+                0.9564404, 0.257556, 0.1778, lut ? 6 : 0, null, null));
+        detector.setSegmentationThreads(stripes, "Leak");
+        return detector;
+    }
+
+    private static NoteDetector multiNote(NoteDetector detector) {
+        detector.setMultiNote(4);
+        return detector;
+    }
+
+    /**
+     * Process a frame that must make the detector throw.
+     */
+    private static void expectFailure(NoteDetector detector, Mat frame) {
+        try {
+            detector.process(frame);
+        } catch (RuntimeException ex) {
+            return;
+        }
+        throw new IllegalStateException("expected thresholding to reject a " + CvType.typeToString(frame.type())
+                + " frame");
+    }
+
+    /**
+     * Run a case once to warm up, then repeatedly, and compare the live Mats.
+     *
+     * @param found whether the case's last frame should find a note, or null
+     *              if it ends in an exception
+     */
+    private static boolean check(String name, int rounds, NoteDetector detector, Boolean found,
+            Consumer<NoteDetector> frames) {
+        frames.accept(detector);
+        int before = DetectionWorkspace.liveMats();
+        boolean hasNote = true;
+        for (int i = 0; i < rounds; i++) {
+            frames.accept(detector);
+            hasNote &= found == null || detector.hasNote() == found;
+        }
+        int delta = DetectionWorkspace.liveMats() - before;
+        detector.setSegmentationThreads(1, null);
+
+        boolean ok = delta == 0 && hasNote;
+        System.out.printf("%-50s %+d live Mats%s%s%n", name, delta, hasNote ? ""
+                : found ? ", NO NOTE FOUND" : ", UNEXPECTED NOTE", ok ? "" : "  FAIL");
+        return ok;
+    }
+}
@@ -0,0 +1,32 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import edu.wpi.first.util.RuntimeLoader;
+
+import org.opencv.core.Core;
+
+/**
+ * Loads OpenCV for the offline tools, from java.library.path or extracted
+ * from a native jar on the classpath. No camera or cscore libraries are
+ * needed, so the tools run on a desktop as well as the rPi.
+ */
+final class OpenCvLoader {
+    private OpenCvLoader() {
+    }
+
+    /**
+     * Load the OpenCV native library.
+     */
+    static void load() {
+        try {
+            new RuntimeLoader<>(Core.NATIVE_LIBRARY_NAME, RuntimeLoader.getDefaultExtractionRoot(), Core.class)
+                    .loadLibrary();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("could not load " + Core.NATIVE_LIBRARY_NAME, ex);
+        }
+    }
+}
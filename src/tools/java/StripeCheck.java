@@ -0,0 +1,206 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import edu.wpi.first.cscore.VideoMode.PixelFormat;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Checks that striped segmentation gives exactly the single-threaded result.
+ *
+ * <p>
+ * Runs NoteDetector with 1 segmentation thread and with 2 to 6 stripes over
+ * random blocky frames, whose orange and grey edges cross every stripe
+ * boundary, and over the test pattern. It does this for several frame sizes,
+ * including a height that does not divide evenly into stripes, and for each
+ * kernel size, which sets the halo each stripe reads. BGR with cvtColor +
+ * inRange, BGR with the lookup table and YUYV input are all covered. The
+ * morphed masks must match pixel for pixel, the contours found in them point
+ * for point, and the poses exactly; any difference is reported and fails the
+ * check.
+ *
+ * <pre>
+ * ./gradlew stripeCheck -PtoolArgs="[frames per case]"
+ * </pre>
+ */
+public final class StripeCheck {
+    private static final int[][] SIZES = { { 160, 120 }, { 320, 240 }, { 322, 237 }, { 640, 480 } };
+    private static final int[] KERNELS = { 1, 3, 5, 7, 9 };
+    private static final int MAX_STRIPES = 6;
+
+    /* Block sizes in pixels for the random frames */
+    private static final int[] BLOCKS = { 2, 3, 5, 8 };
+
+    private static final Scalar ORANGE = new Scalar(0, 110, 255);
+    private static final Scalar GREY = new Scalar(60, 60, 60);
+
+    private StripeCheck() {
+    }
+
+    /**
+     * Main.
+     */
+    public static void main(String... args) {
+        int framesPerCase = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+
+        OpenCvLoader.load();
+        Random random = new Random(1);
+        Mat serialMask = new Mat();
+        Mat stripedMask = new Mat();
+        Mat diff = new Mat();
+        Mat yuyv = new Mat();
+        long cases = 0;
+        long failures = 0;
+
+        for (int[] size : SIZES) {
+            List<Mat> frames = new ArrayList<>();
+            for (int i = 0; i < framesPerCase; i++) {
+                frames.add(blocks(size[0], size[1], BLOCKS[i % BLOCKS.length], random));
+            }
+            Mat pattern = new Mat(size[1], size[0], CvType.CV_8UC3);
+            TestPatternSource.render(pattern, 0.4);
+            frames.add(pattern);
+
+            for (String mode : new String[] { "hsv", "lut", "yuyv" }) {
+                for (int kernel : KERNELS) {
+                    NoteDetector serial = detector(mode, kernel, 1);
+                    for (int stripes = 2; stripes <= MAX_STRIPES; stripes++) {
+                        NoteDetector striped = detector(mode, kernel, stripes);
+                        for (int f = 0; f < frames.size(); f++) {
+                            Mat input = frames.get(f);
+                            if ("yuyv".equals(mode)) {
+                                FormatCheck.toYuyv(input, yuyv);
+                                input = yuyv;
+                            }
+                            serial.process(input);
+                            DetectionWorkspace.current().morphed.copyTo(serialMask);
+                            double[] serialPose = serial.getNotePose().clone();
+                            striped.process(input);
+                            DetectionWorkspace.current().morphed.copyTo(stripedMask);
+                            double[] stripedPose = striped.getNotePose();
+
+                            String problem = compare(serialMask, stripedMask, diff);
+                            if (problem == null && (serial.hasNote() != striped.hasNote()
+                                    || !Arrays.equals(serialPose, stripedPose))) {
+                                problem = "pose " + Arrays.toString(stripedPose) + ", serial "
+                                        + Arrays.toString(serialPose);
+                            }
+                            cases++;
+                            if (problem != null) {
+                                failures++;
+                                System.out.printf("%dx%d %s kernel %d, %d stripes, frame %d: %s%n", size[0],
+                                        size[1], mode, kernel, stripes, f, problem);
+                            }
+                        }
+                        striped.setSegmentationThreads(1, null);
+                    }
+                }
+            }
+            for (Mat frame : frames) {
+                frame.release();
+            }
+        }
+
+        serialMask.release();
+        stripedMask.release();
+        diff.release();
+        yuyv.release();
+        System.out.println(failures == 0 ? "Striped segmentation matches in all " + cases + " cases"
+                : "Striped segmentation DIFFERS in " + failures + " of " + cases + " cases");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static NoteDetector detector(String mode, int kernel, int stripes) {
+        NoteDetector detector = new NoteDetector(null, 0.9564404, 0.1778, 0.257556);
+        detector.setParams(new DetectionParams(NoteDetector.LOWER_ORANGE, NoteDetector.UPPER_ORANGE, 100, kernel,
+                0.9564404, 0.257556, 0.1778, "lut".equals(mode) ? 6 : 0, null, null));
+        if ("yuyv".equals(mode)) {
+            detector.setInputFormat(PixelFormat.kYUYV);
+        }
+        detector.setSegmentationThreads(stripes, "Stripe");
+        return detector;
+    }
+
+    /**
+     * Compare two masks and the contours found in them.
+     *
+     * @return a description of the first difference, or null if identical
+     */
+    private static String compare(Mat expected, Mat actual, Mat diff) {
+        if (!expected.size().equals(actual.size())) {
+            return "mask is " + actual.size() + ", serial " + expected.size();
+        }
+        Core.compare(expected, actual, diff, Core.CMP_NE);
+        int pixels = Core.countNonZero(diff);
+        if (pixels > 0) {
+            return pixels + " mask pixels differ";
+        }
+
+        List<MatOfPoint> expectedContours = contours(expected);
+        List<MatOfPoint> actualContours = contours(actual);
+        String problem = null;
+        if (expectedContours.size() != actualContours.size()) {
+            problem = actualContours.size() + " contours, serial " + expectedContours.size();
+        } else {
+            for (int i = 0; i < expectedContours.size() && problem == null; i++) {
+                Point[] a = expectedContours.get(i).toArray();
+                Point[] b = actualContours.get(i).toArray();
+                if (!Arrays.equals(a, b)) {
+                    problem = "contour " + i + " differs";
+                }
+            }
+        }
+        for (MatOfPoint contour : expectedContours) {
+            contour.release();
+        }
+        for (MatOfPoint contour : actualContours) {
+            contour.release();
+        }
+        return problem;
+    }
+
+    private static List<MatOfPoint> contours(Mat mask) {
+        List<MatOfPoint> contours = new ArrayList<>();
+        Mat hierarchy = new Mat();
+        Imgproc.findContours(mask, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+        hierarchy.release();
+        return contours;
+    }
+
+    /**
+     * A BGR frame of random orange and grey blocks.
+     */
+    private static Mat blocks(int width, int height, int block, Random random) {
+        int cols = (width + block - 1) / block;
+        int rows = (height + block - 1) / block;
+        Mat cells = new Mat(rows, cols, CvType.CV_8UC3, GREY);
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                if (random.nextBoolean()) {
+                    cells.put(y, x, ORANGE.val[0], ORANGE.val[1], ORANGE.val[2]);
+                }
+            }
+        }
+        Mat frame = new Mat();
+        Imgproc.resize(cells, frame, new Size(cols * block, rows * block), 0, 0, Imgproc.INTER_NEAREST);
+        Mat cropped = frame.submat(0, height, 0, width).clone();
+        cells.release();
+        frame.release();
+        return cropped;
+    }
+}
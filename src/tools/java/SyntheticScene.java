@@ -0,0 +1,250 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+import java.util.List;
+import java.util.Random;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Renders frames of a note on the floor at a known distance and angle, for
+ * measuring detection accuracy without a camera.
+ *
+ * <p>
+ * The camera is an ideal level pinhole with the given horizontal field of view
+ * and lens height. The note is an orange ring with straight walls standing on
+ * the floor, projected point by point, so its extent in the frame follows
+ * from the real geometry rather than from the detector's own model. From a
+ * low camera most of what shows is the ring's outer wall; the floor shows
+ * through the hole only where the line of sight clears both rims. Lighting, sensor noise and
+ * distractors are optional, and everything random comes from the seed, so the
+ * same scene renders the same frame every time.
+ */
+public final class SyntheticScene {
+    private static final Scalar FLOOR = new Scalar(70, 75, 80);
+    private static final Scalar WALL = new Scalar(150, 150, 145);
+    private static final Scalar ORANGE = new Scalar(0, 110, 255);
+
+    /* Distractor colours: red passes the default orange range, yellow does not */
+    private static final Scalar RED = new Scalar(30, 20, 200);
+    private static final Scalar YELLOW = new Scalar(0, 220, 240);
+
+    /* Note inner diameter over outer diameter, 10 in over 14 in */
+    private static final double INNER_RATIO = 10.0 / 14.0;
+
+    /* Note height in meters, 2 in */
+    private static final double NOTE_HEIGHT = 0.0508;
+
+    /* Points per projected circle */
+    private static final int CIRCLE_POINTS = 96;
+
+    /* Sub-pixel bits for polygon filling */
+    private static final int SHIFT = 4;
+
+    private final double fov;
+    private final double elevation;
+    private final double ringRadius;
+
+    private double noise;
+    private double gain = 1;
+    private double gradient;
+    private int distractors;
+    private long seed;
+
+    private final Mat hole = new Mat();
+    private final Mat holeBottom = new Mat();
+    private final Mat noiseBuffer = new Mat();
+    private final Mat wide = new Mat();
+    private final Mat ramp = new Mat();
+
+    /**
+     * Create a scene with no noise, even lighting and no distractors.
+     *
+     * @param fov        horizontal field of view in radians
+     * @param elevation  lens height above the floor in meters
+     * @param ringRadius note outer radius in meters
+     */
+    public SyntheticScene(double fov, double elevation, double ringRadius) {
+        this.fov = fov;
+        this.elevation = elevation;
+        this.ringRadius = ringRadius;
+    }
+
+    /**
+     * Set the standard deviation of Gaussian sensor noise, in 8-bit levels.
+     */
+    public void setNoise(double sigma) {
+        noise = sigma;
+    }
+
+    /**
+     * Set the lighting.
+     *
+     * @param gain     overall brightness multiplier
+     * @param gradient brightness change from the frame's centre to its left and
+     *                 right edges, as a fraction; the left edge is darker
+     */
+    public void setLighting(double gain, double gradient) {
+        this.gain = gain;
+        this.gradient = gradient;
+    }
+
+    /**
+     * Set the number of red and yellow blocks drawn above the horizon, where
+     * bumpers and field elements would be.
+     */
+    public void setDistractors(int count) {
+        distractors = count;
+    }
+
+    /**
+     * Set the seed for distractor placement and noise.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Render the scene into a BGR frame at the frame's size.
+     *
+     * @param frame    CV_8UC3 frame to draw into
+     * @param distance floor distance from the camera to the note centre in
+     *                 meters
+     * @param angle    bearing of the note centre in radians, positive to the
+     *                 right
+     */
+    public void render(Mat frame, double distance, double angle) {
+        int width = frame.cols();
+        int height = frame.rows();
+        double focal = width / 2.0 / Math.tan(fov / 2);
+        double cx = width / 2.0;
+        double cy = height / 2.0;
+
+        // A level camera puts the horizon on the middle row
+        frame.setTo(FLOOR);
+        Imgproc.rectangle(frame, new Point(0, 0), new Point(width, cy), WALL, Imgproc.FILLED);
+
+        Random random = new Random(seed);
+        for (int i = 0; i < distractors; i++) {
+            double w = width * (0.05 + 0.15 * random.nextDouble());
+            double h = height * (0.03 + 0.07 * random.nextDouble());
+            double x = (width - w) * random.nextDouble();
+            double y = (cy - h) * random.nextDouble();
+            Imgproc.rectangle(frame, new Point(x, y), new Point(x + w, y + h), i % 2 == 0 ? RED : YELLOW,
+                    Imgproc.FILLED);
+        }
+
+        double noteX = distance * Math.sin(angle);
+        double noteZ = distance * Math.cos(angle);
+
+        // The ring's silhouette is the hull of its bottom and top outer rims
+        Point[] bottom = projectCircle(noteX, noteZ, ringRadius, elevation, focal, cx, cy);
+        Point[] top = projectCircle(noteX, noteZ, ringRadius, elevation - NOTE_HEIGHT, focal, cx, cy);
+        Point[] rims = new Point[bottom.length * 2];
+        System.arraycopy(bottom, 0, rims, 0, bottom.length);
+        System.arraycopy(top, 0, rims, bottom.length, top.length);
+        MatOfPoint rimPoints = new MatOfPoint(rims);
+        MatOfInt hullIndices = new MatOfInt();
+        Imgproc.convexHull(rimPoints, hullIndices);
+        int[] indices = hullIndices.toArray();
+        Point[] hull = new Point[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            hull[i] = rims[indices[i]];
+        }
+        fill(frame, hull, ORANGE, Imgproc.LINE_AA);
+        rimPoints.release();
+        hullIndices.release();
+
+        // Floor shows where the hole's top and bottom rims overlap
+        double inner = ringRadius * INNER_RATIO;
+        hole.create(height, width, CvType.CV_8UC1);
+        holeBottom.create(height, width, CvType.CV_8UC1);
+        hole.setTo(Scalar.all(0));
+        holeBottom.setTo(Scalar.all(0));
+        fill(hole, projectCircle(noteX, noteZ, inner, elevation - NOTE_HEIGHT, focal, cx, cy), Scalar.all(255),
+                Imgproc.LINE_8);
+        fill(holeBottom, projectCircle(noteX, noteZ, inner, elevation, focal, cx, cy), Scalar.all(255),
+                Imgproc.LINE_8);
+        Core.bitwise_and(hole, holeBottom, hole);
+        frame.setTo(FLOOR, hole);
+
+        if (gain != 1 || gradient != 0) {
+            light(frame);
+        }
+        if (noise > 0) {
+            Core.setRNGSeed((int) seed);
+            noiseBuffer.create(height, width, CvType.CV_16SC3);
+            Core.randn(noiseBuffer, 0, noise);
+            frame.convertTo(wide, CvType.CV_16SC3);
+            Core.add(wide, noiseBuffer, wide);
+            wide.convertTo(frame, CvType.CV_8UC3);
+        }
+    }
+
+    /**
+     * Project a horizontal circle through the pinhole, in fixed point with
+     * SHIFT fractional bits.
+     *
+     * @param drop height of the camera above the circle in meters
+     */
+    private Point[] projectCircle(double centerX, double centerZ, double radius, double drop, double focal,
+            double cx, double cy) {
+        Point[] points = new Point[CIRCLE_POINTS];
+        double scale = 1 << SHIFT;
+        for (int i = 0; i < CIRCLE_POINTS; i++) {
+            double phi = 2 * Math.PI * i / CIRCLE_POINTS;
+            double x = centerX + radius * Math.cos(phi);
+            double z = centerZ + radius * Math.sin(phi);
+            points[i] = new Point(Math.round((cx + focal * x / z) * scale),
+                    Math.round((cy + focal * drop / z) * scale));
+        }
+        return points;
+    }
+
+    private static void fill(Mat image, Point[] points, Scalar color, int lineType) {
+        MatOfPoint polygon = new MatOfPoint(points);
+        Imgproc.fillPoly(image, List.of(polygon), color, lineType, SHIFT, new Point());
+        polygon.release();
+    }
+
+    /**
+     * Scale brightness by the gain and a left-to-right ramp.
+     */
+    private void light(Mat frame) {
+        int width = frame.cols();
+        Mat line = new Mat(1, width, CvType.CV_32FC3);
+        float[] row = new float[width * 3];
+        for (int x = 0; x < width; x++) {
+            float level = (float) (gain * (1 + gradient * (2.0 * x / (width - 1) - 1)));
+            row[x * 3] = level;
+            row[x * 3 + 1] = level;
+            row[x * 3 + 2] = level;
+        }
+        line.put(0, 0, row);
+        Core.repeat(line, frame.rows(), 1, ramp);
+        line.release();
+
+        frame.convertTo(wide, CvType.CV_32FC3);
+        Core.multiply(wide, ramp, wide);
+        wide.convertTo(frame, CvType.CV_8UC3);
+    }
+
+    /**
+     * Free the scene's buffers.
+     */
+    public void release() {
+        hole.release();
+        holeBottom.release();
+        noiseBuffer.release();
+        wide.release();
+        ramp.release();
+    }
+}